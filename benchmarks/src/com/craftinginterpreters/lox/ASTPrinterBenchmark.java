@@ -0,0 +1,15 @@
+package com.craftinginterpreters.lox;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Thread)
+public class ASTPrinterBenchmark {
+    private final ASTPrinter printer = new ASTPrinter();
+
+    @Benchmark
+    public String stringify(Script script) {
+        return printer.stringify(script.root);
+    }
+}
@@ -0,0 +1,35 @@
+package com.craftinginterpreters.lox;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/*
+Lox.run as the prompt and script runner call it, with the printed tree and result discarded.
+ */
+@State(Scope.Thread)
+public class EndToEndBenchmark {
+    private Output out;
+
+    @Setup
+    public void setup() {
+        out = Lox.out;
+        Lox.out = new Output(new PrintStream(OutputStream.nullOutputStream()), false, false);
+    }
+
+    @TearDown
+    public void tearDown() {
+        Lox.out.close();
+        Lox.out = out;
+    }
+
+    @Benchmark
+    public void run(Script script) {
+        Lox.run(script.source);
+    }
+}
@@ -0,0 +1,39 @@
+package com.craftinginterpreters.lox;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Thread)
+public class InterpreterBenchmark {
+    // Lox.Engine names, JMH only takes parameters of public types.
+    @Param({"INTERPRETER", "VM", "SPECIALIZING", "JIT"})
+    public String engine;
+
+    private final Interpreter interpreter = new Interpreter();
+    private final VM vm = new VM();
+    private Lox.Engine selected;
+    private Chunk chunk;
+    private SpecializedNode.Root specialized;
+    private JitCompiler.Code compiled;
+
+    @Setup
+    public void setup(Script script) {
+        selected = Lox.Engine.valueOf(engine);
+        chunk = new Compiler().compile(script.root);
+        specialized = new Specializer().specialize(script.root);
+        compiled = new JitCompiler().compile(script.root);
+    }
+
+    @Benchmark
+    public Object interpret(Script script) {
+        return switch (selected) {
+            case VM -> vm.run(chunk);
+            case SPECIALIZING -> specialized.execute();
+            case JIT -> compiled.evaluate();
+            default -> interpreter.evaluate(script.root);
+        };
+    }
+}
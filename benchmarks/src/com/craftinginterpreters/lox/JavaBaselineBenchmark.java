@@ -0,0 +1,62 @@
+package com.craftinginterpreters.lox;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/*
+Expressions written both in Lox and by hand in Java, the speed the JIT engine is measured against. The
+Java versions compute on unboxed doubles and booleans and box the result once, as the generated classes do.
+Their literals are constants to javac and C2 alike, so what remains of the difference is the JIT's own
+code. The tree-walking interpreter runs the same trees for scale.
+ */
+@State(Scope.Thread)
+public class JavaBaselineBenchmark {
+    public enum Expression { ARITHMETIC, COMPARISON }
+
+    @Param({"ARITHMETIC", "COMPARISON"})
+    public Expression expression;
+
+    private final Interpreter interpreter = new Interpreter();
+    private Node root;
+    private JitCompiler.Code compiled;
+
+    @Setup
+    public void setup() {
+        root = new Parser(new Tokenizer(source(expression)).tokenize()).parse();
+        if (root == null) throw new IllegalStateException("Benchmark expression does not parse: " + source(expression));
+        compiled = new JitCompiler().compile(root);
+
+        Object expected = java();
+        if (!expected.equals(compiled.evaluate()) || !expected.equals(interpreter.evaluate(root))) {
+            throw new IllegalStateException("Java and Lox disagree on " + source(expression));
+        }
+    }
+
+    static String source(Expression expression) {
+        return switch (expression) {
+            case ARITHMETIC -> "(1.5 + 2) * 3 - 4 / (5 + 6) * -7 + 8 * (9 - 10.25) / 11";
+            case COMPARISON -> "(1 + 2 > 3 - 4) == !(5 * 6 <= 7 / 8) != (9 >= 10 * 0.5)";
+        };
+    }
+
+    @Benchmark
+    public Object java() {
+        return switch (expression) {
+            case ARITHMETIC -> (1.5 + 2.0) * 3.0 - 4.0 / (5.0 + 6.0) * -7.0 + 8.0 * (9.0 - 10.25) / 11.0;
+            case COMPARISON -> (1.0 + 2.0 > 3.0 - 4.0) == !(5.0 * 6.0 <= 7.0 / 8.0) != (9.0 >= 10.0 * 0.5);
+        };
+    }
+
+    @Benchmark
+    public Object jit() {
+        return compiled.evaluate();
+    }
+
+    @Benchmark
+    public Object interpreter() {
+        return interpreter.evaluate(root);
+    }
+}
@@ -0,0 +1,15 @@
+package com.craftinginterpreters.lox;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+public class ParserBenchmark {
+    @Benchmark
+    public Object parse(Script script) {
+        return new Parser(script.tokens).parse();
+    }
+
+    @Benchmark
+    public Object parseCompact(Script script) {
+        return new Parser(script.tokenBuffer).parse();
+    }
+}
@@ -0,0 +1,70 @@
+package com.craftinginterpreters.lox;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+
+/*
+Generated benchmark input, along with the output of each phase so a benchmark can start from any of them.
+ */
+@State(Scope.Thread)
+public class Script {
+    public enum Shape { NESTED, PLUS_CHAIN, STRINGS, NUMBERS }
+
+    @Param({"NESTED", "PLUS_CHAIN", "STRINGS", "NUMBERS"})
+    public Shape shape;
+
+    @Param({"10", "100", "1000"})
+    public int size;
+
+    String source;
+    List<Token> tokens;
+    TokenBuffer tokenBuffer;
+    Node root;
+
+    @Setup
+    public void setup() {
+        source = generate(shape, size);
+        tokens = new Tokenizer(source).tokenize();
+        tokenBuffer = new Tokenizer(source).tokenizeCompact();
+        root = new Parser(tokens).parse();
+        if (root == null) throw new IllegalStateException("Benchmark script does not parse: " + source);
+    }
+
+    static String generate(Shape shape, int size) {
+        StringBuilder script = new StringBuilder();
+        switch (shape) {
+            case NESTED:
+                // (1 + (2 + (3 + ...)))
+                for (int i = 1; i <= size; i++) script.append('(').append(i).append(" + ");
+                script.append('0');
+                for (int i = 1; i <= size; i++) script.append(')');
+                break;
+            case PLUS_CHAIN:
+                // 1 + 2 + 3 + ...
+                for (int i = 1; i <= size; i++) {
+                    if (i > 1) script.append(" + ");
+                    script.append(i);
+                }
+                break;
+            case STRINGS:
+                // "s1" + "ab" * 2 + "s2" + "ab" * 2 + ...
+                for (int i = 1; i <= size; i++) {
+                    if (i > 1) script.append(" + ");
+                    script.append("\"s").append(i).append("\" + \"ab\" * 2");
+                }
+                break;
+            case NUMBERS:
+                // 1.5 * 2 - 3 / 4 + 1.5 * 2 - 3 / 4 ...
+                for (int i = 1; i <= size; i++) {
+                    if (i > 1) script.append(i % 2 == 0 ? " - " : " + ");
+                    script.append(i).append(".5 * ").append(i % 7 + 1).append(" / ").append(i % 3 + 2);
+                }
+                break;
+        }
+        return script.toString();
+    }
+}
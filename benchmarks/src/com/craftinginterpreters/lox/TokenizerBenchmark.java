@@ -0,0 +1,20 @@
+package com.craftinginterpreters.lox;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+import java.util.List;
+
+/*
+Run with -prof gc and compare gc.alloc.rate.norm of the two modes for the allocation per token.
+ */
+public class TokenizerBenchmark {
+    @Benchmark
+    public List<Token> tokenize(Script script) {
+        return new Tokenizer(script.source).tokenize();
+    }
+
+    @Benchmark
+    public Object tokenizeCompact(Script script) {
+        return new Tokenizer(script.source).tokenizeCompact();
+    }
+}
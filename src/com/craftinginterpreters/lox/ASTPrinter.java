@@ -1,8 +1,56 @@
 package com.craftinginterpreters.lox;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
+
 public class ASTPrinter implements Node.Visitor<String> {
+    private final boolean iterative;
+
+    ASTPrinter() {
+        this(false);
+    }
+
+    // An iterative printer walks the tree with an explicit stack, for trees too deep to recurse over.
+    ASTPrinter(boolean iterative) {
+        this.iterative = iterative;
+    }
+
     String stringify(Node root) {
-        return root.accept(this);
+        return iterative ? stringifyIteratively(root) : root.accept(this);
+    }
+
+    private String stringifyIteratively(Node root) {
+        StringBuilder out = new StringBuilder();
+        // Nodes still to print, interleaved with the text that goes between them.
+        Deque<Object> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            Object item = pending.pop();
+            if (item instanceof String) {
+                out.append((String)item);
+            } else if (item instanceof Node.Binary) {
+                Node.Binary node = (Node.Binary)item;
+                pending.push(" )");
+                pending.push(node.right);
+                pending.push(" " + node.operator.lexeme + " ");
+                pending.push(node.left);
+                pending.push("( ");
+            } else if (item instanceof Node.Grouping) {
+                pending.push(")");
+                pending.push(((Node.Grouping)item).expression);
+                pending.push("(");
+            } else if (item instanceof Node.Unary) {
+                Node.Unary node = (Node.Unary)item;
+                pending.push(")");
+                pending.push(node.right);
+                pending.push("( " + node.operator.lexeme + " ");
+            } else if (item instanceof Node.Variable) {
+                out.append(visit((Node.Variable)item));
+            } else {
+                out.append(visit((Node.Literal)item));
+            }
+        }
+        return out.toString();
     }
 
     @Override
@@ -26,4 +74,9 @@ public class ASTPrinter implements Node.Visitor<String> {
     public String visit(Node.Unary node) {
         return "( " + node.operator.lexeme + " " + stringify(node.right) + ")";
     }
+
+    @Override
+    public String visit(Node.Variable node) {
+        return node.name.lexeme;
+    }
 }
@@ -0,0 +1,70 @@
+package com.craftinginterpreters.lox;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+/*
+Evaluates a file of independent expressions, one per line, in parallel on the common fork-join pool.
+Lines are read and evaluated in blocks, and the results of a block are written out in input order
+before the next one is read. Each line collects its own errors instead of setting Lox.hadError.
+ */
+public class BatchRunner {
+    private static final int BLOCK_SIZE = 1 << 14;
+
+    private final ThreadLocal<LineEvaluator> evaluators;
+    private final AtomicLong syntaxErrors = new AtomicLong(), runtimeErrors = new AtomicLong();
+
+    BatchRunner(Lox.Engine engine, ParseCache cache, boolean recovering, boolean iterative) {
+        this.evaluators = ThreadLocal.withInitial(() -> new LineEvaluator(engine, cache, recovering, iterative));
+    }
+
+    void run(BufferedReader reader, Output out) throws IOException {
+        List<String> lines = new ArrayList<>(BLOCK_SIZE);
+        int firstLine = 1;
+        while (true) {
+            lines.clear();
+            String line;
+            while (lines.size() < BLOCK_SIZE && (line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+            if (lines.isEmpty()) break;
+
+            final int offset = firstLine;
+            String[] results = IntStream.range(0, lines.size())
+                    .parallel()
+                    .mapToObj(i -> evaluate(lines.get(i), offset + i))
+                    .toArray(String[]::new);
+            for (String result : results) {
+                if (result != null) out.println(result);
+            }
+            firstLine += lines.size();
+        }
+    }
+
+    long syntaxErrors() {
+        return syntaxErrors.get();
+    }
+
+    long runtimeErrors() {
+        return runtimeErrors.get();
+    }
+
+    // Returns what the line printed, the result or its errors, or null for a blank line.
+    private String evaluate(String script, int line) {
+        if (script.isBlank()) return null;
+
+        LineEvaluator.Result result = evaluators.get().evaluate(script, line);
+        if (result.value != null) return result.value;
+
+        if (result.runtimeError) {
+            runtimeErrors.incrementAndGet();
+        } else {
+            syntaxErrors.incrementAndGet();
+        }
+        return String.join(System.lineSeparator(), result.errors);
+    }
+}
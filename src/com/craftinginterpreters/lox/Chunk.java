@@ -0,0 +1,18 @@
+package com.craftinginterpreters.lox;
+
+class Chunk {
+    Chunk(byte[] code, Token[] tokens, double[] numbers, Object[] constants, int maxStack) {
+        this.code = code;
+        this.tokens = tokens;
+        this.numbers = numbers;
+        this.constants = constants;
+        this.maxStack = maxStack;
+    }
+
+    final byte[] code;
+    // The operator token of the instruction starting at each offset, used to report runtime errors.
+    final Token[] tokens;
+    final double[] numbers;
+    final Object[] constants;
+    final int maxStack;
+}
@@ -0,0 +1,238 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/*
+Evaluates a tree once for every row of a set of columns, the variables being bound to the row's values.
+When every column and literal is a number or a boolean, the type of each node is known before evaluating,
+and the tree is evaluated a batch of rows at a time: one primitive loop per node and batch, over double[]
+and boolean[] scratch arrays, with nothing boxed. Such a tree can not fail, booleans are 0 and 1 wherever
+a number is expected, as in Interpreter.tryCastNumber. Any other tree is evaluated row by row by the
+Interpreter.
+ */
+class ColumnarEvaluator {
+    private static final int BATCH_SIZE = 4096;
+    private static final byte DOUBLE = 0, BOOLEAN = 1, OTHER = 2;
+
+    private final Map<String, ?> columns;
+    private final int rows;
+    private final Map<Node, Byte> types = new IdentityHashMap<>();
+    // Scratch arrays by slot. A node writes to its own slot, its right operand to the next one.
+    private double[][] doubleSlots = new double[4][];
+    private boolean[][] booleanSlots = new boolean[4][];
+
+    // Each column is a double[], boolean[] or an Object[] of Lox values, with one element per row.
+    ColumnarEvaluator(Map<String, ?> columns, int rows) {
+        for (Map.Entry<String, ?> column : columns.entrySet()) {
+            Object values = column.getValue();
+            int length;
+            if (values instanceof double[]) {
+                length = ((double[])values).length;
+            } else if (values instanceof boolean[]) {
+                length = ((boolean[])values).length;
+            } else if (values instanceof Object[]) {
+                length = ((Object[])values).length;
+            } else {
+                throw new IllegalArgumentException("Column " + column.getKey() + " is not a double[], boolean[] or Object[]");
+            }
+            if (length != rows) throw new IllegalArgumentException("Column " + column.getKey() + " has " + length + " rows, not " + rows);
+        }
+        this.columns = columns;
+        this.rows = rows;
+    }
+
+    // Returns a double[] or boolean[] when the tree always yields numbers or booleans, an Object[] otherwise.
+    Object evaluate(Node root, Interpreter interpreter) {
+        switch (type(root)) {
+            case DOUBLE: {
+                double[] results = new double[rows];
+                for (int offset = 0; offset < rows; offset += BATCH_SIZE) {
+                    int length = Math.min(BATCH_SIZE, rows - offset);
+                    System.arraycopy(doubles(root, 0, offset, length), 0, results, offset, length);
+                }
+                return results;
+            }
+            case BOOLEAN: {
+                boolean[] results = new boolean[rows];
+                for (int offset = 0; offset < rows; offset += BATCH_SIZE) {
+                    int length = Math.min(BATCH_SIZE, rows - offset);
+                    System.arraycopy(booleans(root, 0, offset, length), 0, results, offset, length);
+                }
+                return results;
+            }
+            default:
+                return evaluateRows(root, interpreter);
+        }
+    }
+
+    private Object[] evaluateRows(Node root, Interpreter interpreter) {
+        Object[] results = new Object[rows];
+        Map<String, Object> row = new HashMap<>();
+        interpreter.bind(row);
+        try {
+            for (int i = 0; i < rows; i++) {
+                for (Map.Entry<String, ?> column : columns.entrySet()) {
+                    row.put(column.getKey(), value(column.getValue(), i));
+                }
+                Object result = interpreter.evaluate(root);
+                results[i] = result instanceof Rope ? result.toString() : result;
+            }
+        } finally {
+            interpreter.bind(Map.of());
+        }
+        return results;
+    }
+
+    private static Object value(Object column, int row) {
+        if (column instanceof double[]) return ((double[])column)[row];
+        if (column instanceof boolean[]) return ((boolean[])column)[row];
+        return ((Object[])column)[row];
+    }
+
+    /*
+    Static types
+    */
+    private byte type(Node node) {
+        Byte known = types.get(node);
+        if (known != null) return known;
+
+        byte type = OTHER;
+        if (node instanceof Node.Literal) {
+            Object value = ((Node.Literal)node).value;
+            if (value instanceof Double) type = DOUBLE;
+            if (value instanceof Boolean) type = BOOLEAN;
+        } else if (node instanceof Node.Variable) {
+            Object column = columns.get(((Node.Variable)node).name.lexeme);
+            if (column instanceof double[]) type = DOUBLE;
+            if (column instanceof boolean[]) type = BOOLEAN;
+        } else if (node instanceof Node.Grouping) {
+            type = type(((Node.Grouping)node).expression);
+        } else if (node instanceof Node.Unary) {
+            Node.Unary unary = (Node.Unary)node;
+            if (type(unary.right) != OTHER) {
+                if (unary.operator.type == TokenType.MINUS) type = DOUBLE;
+                if (unary.operator.type == TokenType.BANG) type = BOOLEAN;
+            }
+        } else {
+            Node.Binary binary = (Node.Binary)node;
+            if (type(binary.left) != OTHER && type(binary.right) != OTHER) {
+                type = switch (binary.operator.type) {
+                    case PLUS, MINUS, STAR, SLASH -> DOUBLE;
+                    case EQUAL_EQUAL, BANG_EQUAL, GREATER, GREATER_EQUAL, LESS, LESS_EQUAL -> BOOLEAN;
+                    default -> OTHER;
+                };
+            }
+        }
+        types.put(node, type);
+        return type;
+    }
+
+    /*
+    Batches, the values of `node` for rows [offset, offset + length) in scratch slot `slot`
+    */
+    private double[] doubles(Node node, int slot, int offset, int length) {
+        double[] out = doubleSlot(slot);
+        if (type(node) == BOOLEAN) {
+            boolean[] values = booleans(node, slot, offset, length);
+            for (int i = 0; i < length; i++) out[i] = values[i] ? 1 : 0;
+            return out;
+        }
+
+        if (node instanceof Node.Literal) {
+            Arrays.fill(out, 0, length, (double)((Node.Literal)node).value);
+        } else if (node instanceof Node.Variable) {
+            System.arraycopy((double[])columns.get(((Node.Variable)node).name.lexeme), offset, out, 0, length);
+        } else if (node instanceof Node.Grouping) {
+            return doubles(((Node.Grouping)node).expression, slot, offset, length);
+        } else if (node instanceof Node.Unary) {
+            double[] right = doubles(((Node.Unary)node).right, slot, offset, length);
+            for (int i = 0; i < length; i++) out[i] = -right[i];
+        } else {
+            Node.Binary binary = (Node.Binary)node;
+            double[] left = doubles(binary.left, slot, offset, length);
+            double[] right = doubles(binary.right, slot + 1, offset, length);
+            switch (binary.operator.type) {
+                case PLUS: for (int i = 0; i < length; i++) out[i] = left[i] + right[i]; break;
+                case MINUS: for (int i = 0; i < length; i++) out[i] = left[i] - right[i]; break;
+                case STAR: for (int i = 0; i < length; i++) out[i] = left[i] * right[i]; break;
+                default: for (int i = 0; i < length; i++) out[i] = left[i] / right[i]; break;
+            }
+        }
+        return out;
+    }
+
+    private boolean[] booleans(Node node, int slot, int offset, int length) {
+        boolean[] out = booleanSlot(slot);
+        if (node instanceof Node.Literal) {
+            Arrays.fill(out, 0, length, (boolean)((Node.Literal)node).value);
+        } else if (node instanceof Node.Variable) {
+            System.arraycopy((boolean[])columns.get(((Node.Variable)node).name.lexeme), offset, out, 0, length);
+        } else if (node instanceof Node.Grouping) {
+            return booleans(((Node.Grouping)node).expression, slot, offset, length);
+        } else if (node instanceof Node.Unary) {
+            Node right = ((Node.Unary)node).right;
+            if (type(right) == BOOLEAN) {
+                boolean[] values = booleans(right, slot, offset, length);
+                for (int i = 0; i < length; i++) out[i] = !values[i];
+            } else {
+                // A number is true unless it is 0, see Interpreter.toBoolean.
+                double[] values = doubles(right, slot, offset, length);
+                for (int i = 0; i < length; i++) out[i] = values[i] == 0;
+            }
+        } else {
+            Node.Binary binary = (Node.Binary)node;
+            TokenType operator = binary.operator.type;
+            if (operator == TokenType.EQUAL_EQUAL || operator == TokenType.BANG_EQUAL) {
+                equal(binary, slot, offset, length, out);
+                if (operator == TokenType.BANG_EQUAL) {
+                    for (int i = 0; i < length; i++) out[i] = !out[i];
+                }
+                return out;
+            }
+
+            double[] left = doubles(binary.left, slot, offset, length);
+            double[] right = doubles(binary.right, slot + 1, offset, length);
+            switch (operator) {
+                case GREATER: for (int i = 0; i < length; i++) out[i] = left[i] > right[i]; break;
+                case GREATER_EQUAL: for (int i = 0; i < length; i++) out[i] = left[i] >= right[i]; break;
+                case LESS: for (int i = 0; i < length; i++) out[i] = left[i] < right[i]; break;
+                default: for (int i = 0; i < length; i++) out[i] = left[i] <= right[i]; break;
+            }
+        }
+        return out;
+    }
+
+    // Equality as in Interpreter.operatorEquals: a number never equals a boolean, and numbers are compared
+    // the way Double.equals does, so NaN equals NaN and 0 does not equal -0.
+    private void equal(Node.Binary binary, int slot, int offset, int length, boolean[] out) {
+        byte leftType = type(binary.left), rightType = type(binary.right);
+        if (leftType != rightType) {
+            Arrays.fill(out, 0, length, false);
+        } else if (leftType == DOUBLE) {
+            double[] left = doubles(binary.left, slot, offset, length);
+            double[] right = doubles(binary.right, slot + 1, offset, length);
+            for (int i = 0; i < length; i++) {
+                out[i] = Double.doubleToLongBits(left[i]) == Double.doubleToLongBits(right[i]);
+            }
+        } else {
+            boolean[] left = booleans(binary.left, slot + 1, offset, length);
+            boolean[] right = booleans(binary.right, slot + 2, offset, length);
+            for (int i = 0; i < length; i++) out[i] = left[i] == right[i];
+        }
+    }
+
+    private double[] doubleSlot(int slot) {
+        if (slot >= doubleSlots.length) doubleSlots = Arrays.copyOf(doubleSlots, slot * 2);
+        if (doubleSlots[slot] == null) doubleSlots[slot] = new double[BATCH_SIZE];
+        return doubleSlots[slot];
+    }
+
+    private boolean[] booleanSlot(int slot) {
+        if (slot >= booleanSlots.length) booleanSlots = Arrays.copyOf(booleanSlots, slot * 2);
+        if (booleanSlots[slot] == null) booleanSlots[slot] = new boolean[BATCH_SIZE];
+        return booleanSlots[slot];
+    }
+}
@@ -0,0 +1,90 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Map;
+
+/*
+Immutable handle on a compiled source, safe to cache and to evaluate from several threads at once.
+The tree, the bytecode and the compiled class are shared, only the evaluator state is per thread, and the
+self-specializing tree is built once per thread since it rewrites itself as it runs.
+ */
+public class CompiledExpression {
+    private static final ThreadLocal<Interpreter> interpreters = ThreadLocal.withInitial(Interpreter::new);
+    private static final ThreadLocal<VM> vms = ThreadLocal.withInitial(VM::new);
+
+    private final String source;
+    private final Lox.Engine engine;
+    private final Node root;
+    private final Chunk chunk;
+    private final ThreadLocal<SpecializedNode.Root> specialized;
+    private final JitCompiler.Code compiled;
+
+    CompiledExpression(String source, Lox.Engine engine, Node root) {
+        this.source = source;
+        this.engine = engine;
+        this.root = root;
+        this.chunk = engine == Lox.Engine.VM ? new Compiler().compile(root) : null;
+        this.specialized = engine == Lox.Engine.SPECIALIZING
+                ? ThreadLocal.withInitial(() -> new Specializer().specialize(root))
+                : null;
+        this.compiled = engine == Lox.Engine.JIT ? new JitCompiler().compile(root) : null;
+    }
+
+    public String source() {
+        return source;
+    }
+
+    // Returns the value as a Double, Boolean, String or null for nil. Null is also returned after a runtime
+    // error, which is added to the diagnostics.
+    public Object evaluate(Diagnostics diagnostics) {
+        Metrics.Span evaluating = Metrics.global.begin(Metrics.Phase.EVALUATE);
+        long evaluated = evaluating != null ? evaluatedNodes() : 0;
+        try {
+            Object result = switch (engine) {
+                case VM -> vms.get().run(chunk);
+                case SPECIALIZING -> specialized.get().execute();
+                case JIT -> compiled.evaluate();
+                default -> interpreters.get().evaluate(root);
+            };
+            return result instanceof Rope ? result.toString() : result;
+        } catch (RuntimeError error) {
+            diagnostics.runtimeError(error);
+            return null;
+        } finally {
+            if (evaluating != null) evaluating.end(evaluatedNodes() - evaluated);
+        }
+    }
+
+    // Evaluates the expression once for every row of the columns, with each variable bound to the column of
+    // its name. A column is a double[], a boolean[] or an Object[] of Doubles, Booleans, Strings and nulls,
+    // and all of them hold `rows` elements. Returns a double[] or boolean[] when the columns and literals are
+    // all numbers and booleans, evaluated a batch of rows at a time without boxing, and an Object[] of values
+    // as evaluate returns them otherwise. Null is returned after a runtime error, which is added to the
+    // diagnostics.
+    public Object evaluateColumns(Map<String, ?> columns, int rows, Diagnostics diagnostics) {
+        Metrics.Span evaluating = Metrics.global.begin(Metrics.Phase.EVALUATE);
+        try {
+            return new ColumnarEvaluator(columns, rows).evaluate(root, interpreters.get());
+        } catch (RuntimeError error) {
+            diagnostics.runtimeError(error);
+            return null;
+        } finally {
+            if (evaluating != null) evaluating.end(rows);
+        }
+    }
+
+    private long evaluatedNodes() {
+        return switch (engine) {
+            case VM -> vms.get().executedInstructions();
+            case SPECIALIZING, JIT -> 0;
+            default -> interpreters.get().evaluatedNodes();
+        };
+    }
+
+    // The value as the prompt prints it, or null after a runtime error.
+    public String evaluateToString(Diagnostics diagnostics) {
+        int errors = diagnostics.messages().size();
+        Object result = evaluate(diagnostics);
+        if (diagnostics.messages().size() > errors) return null;
+        return Interpreter.stringifyResult(result);
+    }
+}
@@ -0,0 +1,163 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class Compiler implements Node.Visitor<Void> {
+    private byte[] code = new byte[64];
+    private Token[] tokens = new Token[64];
+    private int count = 0;
+
+    private double[] numbers = new double[16];
+    private int numberCount = 0;
+    private final Map<Long, Integer> numberIndices = new HashMap<>();
+    private final List<Object> constants = new ArrayList<>();
+    private final Map<Object, Integer> constantIndices = new HashMap<>();
+
+    private int stackDepth = 0, maxStack = 0;
+
+    Chunk compile(Node root) {
+        compileNode(root);
+        emit(OpCode.RETURN, null);
+        return new Chunk(
+                Arrays.copyOf(code, count),
+                Arrays.copyOf(tokens, count),
+                Arrays.copyOf(numbers, numberCount),
+                constants.toArray(),
+                maxStack);
+    }
+
+    private void compileNode(Node node) {
+        node.accept(this);
+    }
+
+    @Override
+    public Void visit(Node.Binary node) {
+        compileNode(node.left);
+        compileNode(node.right);
+        byte opCode;
+        switch (node.operator.type) {
+            case EQUAL_EQUAL: opCode = OpCode.EQUAL; break;
+            case BANG_EQUAL: opCode = OpCode.NOT_EQUAL; break;
+            case PLUS: opCode = OpCode.ADD; break;
+            case STAR: opCode = OpCode.MULTIPLY; break;
+            case GREATER: opCode = OpCode.GREATER; break;
+            case GREATER_EQUAL: opCode = OpCode.GREATER_EQUAL; break;
+            case LESS: opCode = OpCode.LESS; break;
+            case LESS_EQUAL: opCode = OpCode.LESS_EQUAL; break;
+            case MINUS: opCode = OpCode.SUBTRACT; break;
+            case SLASH: opCode = OpCode.DIVIDE; break;
+            default:
+                // Mirrors the interpreter, which evaluates both operands and yields nil.
+                emit(OpCode.POP, null);
+                emit(OpCode.POP, null);
+                emit(OpCode.NIL, null);
+                return null;
+        }
+        emit(opCode, node.operator);
+        return null;
+    }
+
+    @Override
+    public Void visit(Node.Grouping node) {
+        compileNode(node.expression);
+        return null;
+    }
+
+    @Override
+    public Void visit(Node.Literal node) {
+        if (node.value == null) {
+            emit(OpCode.NIL, null);
+        } else if (node.value instanceof Boolean) {
+            emit((boolean)node.value ? OpCode.TRUE : OpCode.FALSE, null);
+        } else if (node.value instanceof Double) {
+            emitWithIndex(OpCode.NUMBER, numberIndex((double)node.value));
+        } else {
+            emitWithIndex(OpCode.CONSTANT, constantIndex(node.value));
+        }
+        return null;
+    }
+
+    @Override
+    public Void visit(Node.Unary node) {
+        compileNode(node.right);
+        switch (node.operator.type) {
+            case BANG: emit(OpCode.NOT, node.operator); break;
+            case MINUS: emit(OpCode.NEGATE, node.operator); break;
+            default:
+                emit(OpCode.POP, null);
+                emit(OpCode.NIL, null);
+                break;
+        }
+        return null;
+    }
+
+    @Override
+    public Void visit(Node.Variable node) {
+        emit(OpCode.VARIABLE, node.name);
+        return null;
+    }
+
+    /*
+    Chunk building helpers
+    */
+    private int numberIndex(double value) {
+        // Keyed on the raw bits so that 0 and -0 stay distinct constants.
+        return numberIndices.computeIfAbsent(Double.doubleToRawLongBits(value), bits -> {
+            if (numberCount == numbers.length) numbers = Arrays.copyOf(numbers, numberCount * 2);
+            numbers[numberCount] = value;
+            return numberCount++;
+        });
+    }
+
+    private int constantIndex(Object value) {
+        return constantIndices.computeIfAbsent(value, key -> {
+            constants.add(key);
+            return constants.size() - 1;
+        });
+    }
+
+    private void emitWithIndex(byte opCode, int index) {
+        emit(opCode, null);
+        writeByte((byte)(index >>> 16));
+        writeByte((byte)(index >>> 8));
+        writeByte((byte)index);
+    }
+
+    private void emit(byte opCode, Token token) {
+        // Written first, so the arrays have grown to hold the opcode's token.
+        writeByte(opCode);
+        tokens[count - 1] = token;
+        stackDepth += stackEffect(opCode);
+        maxStack = Math.max(maxStack, stackDepth);
+    }
+
+    private void writeByte(byte value) {
+        if (count == code.length) {
+            code = Arrays.copyOf(code, count * 2);
+            tokens = Arrays.copyOf(tokens, count * 2);
+        }
+        code[count++] = value;
+    }
+
+    private static int stackEffect(byte opCode) {
+        switch (opCode) {
+            case OpCode.NUMBER:
+            case OpCode.CONSTANT:
+            case OpCode.NIL:
+            case OpCode.TRUE:
+            case OpCode.FALSE:
+            case OpCode.VARIABLE:
+                return 1;
+            case OpCode.NOT:
+            case OpCode.NEGATE:
+            case OpCode.RETURN:
+                return 0;
+            default:
+                return -1;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/*
+Collects the errors of one LoxEngine.compile or CompiledExpression.evaluate call, formatted the way the
+prompt prints them. Cheap to create, use one per call and do not share it between threads.
+ */
+public class Diagnostics implements ErrorReporter {
+    private final List<String> messages = new ArrayList<>(1);
+    private int syntaxErrors = 0;
+    private boolean runtimeError = false;
+
+    @Override
+    public void report(int line, String where, String message) {
+        messages.add(String.format("[line %d]: Error %s: %s", line, where, message));
+        syntaxErrors++;
+    }
+
+    void runtimeError(RuntimeError error) {
+        messages.add(String.format("[line %d]: %s", error.token.line, error.getMessage()));
+        runtimeError = true;
+    }
+
+    public List<String> messages() {
+        return Collections.unmodifiableList(messages);
+    }
+
+    public boolean hadError() {
+        return syntaxErrors > 0;
+    }
+
+    public boolean hadRuntimeError() {
+        return runtimeError;
+    }
+
+    int syntaxErrors() {
+        return syntaxErrors;
+    }
+}
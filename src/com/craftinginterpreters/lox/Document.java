@@ -0,0 +1,42 @@
+package com.craftinginterpreters.lox;
+
+/*
+A source that is edited in place, like an editor buffer. Each edit tokenizes and parses only around the
+edited text, see IncrementalParser, and compiles the result into a new CompiledExpression. One thread edits
+a Document at a time, the expressions it returns can be shared like any other.
+ */
+public class Document {
+    private final Lox.Engine engine;
+    private final boolean optimize;
+    private final IncrementalParser parser;
+    private CompiledExpression compiled;
+
+    Document(Lox.Engine engine, boolean optimize, String source, Diagnostics diagnostics) {
+        this.engine = engine;
+        this.optimize = optimize;
+        this.parser = new IncrementalParser(source, true, diagnostics);
+        this.compiled = compile(parser.root());
+    }
+
+    public String source() {
+        return parser.source();
+    }
+
+    // The current source compiled, or null when it has syntax errors.
+    public CompiledExpression compiled() {
+        return compiled;
+    }
+
+    // Replaces `removed` characters at `offset` with `inserted`, and returns the edited source compiled. Returns
+    // null when it has syntax errors, after adding all of them to the diagnostics.
+    public CompiledExpression edit(int offset, int removed, String inserted, Diagnostics diagnostics) {
+        compiled = compile(parser.edit(offset, removed, inserted, diagnostics));
+        return compiled;
+    }
+
+    private CompiledExpression compile(Node root) {
+        if (root == null) return null;
+        if (optimize) root = new Optimizer().optimize(root);
+        return new CompiledExpression(parser.source(), engine, root);
+    }
+}
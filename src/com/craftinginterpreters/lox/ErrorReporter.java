@@ -0,0 +1,20 @@
+package com.craftinginterpreters.lox;
+
+/*
+Receives the syntax errors found by the Tokenizer and the Parser.
+ */
+interface ErrorReporter {
+    void report(int line, String where, String message);
+
+    default void error(int line, String message) {
+        report(line, "", message);
+    }
+
+    default void error(Token token, String message) {
+        if (token.type == TokenType.EOF) {
+            report(token.line, "at end", message);
+        } else {
+            report(token.line, "at '" + token.lexeme + "'", message);
+        }
+    }
+}
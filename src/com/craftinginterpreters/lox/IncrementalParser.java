@@ -0,0 +1,378 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.craftinginterpreters.lox.TokenType.*;
+
+/*
+The tokens and tree of a source that is edited in place, brought up to date after each edit with work that
+depends on the edit rather than on the source. Tokens are scanned again from the end of the last token the
+edit cannot have changed, until the scanner is back at the start of an old token. The tokens of the smallest
+node around every changed token are parsed again, and only the nodes from there up to the root are rebuilt,
+all others are reused. As long as the operators around that node still bind looser than the one at the root
+of its new tree, the rest of the tree is what a full parse builds too. When they do not, the innermost
+grouping around the changed tokens is parsed again instead. An edit that adds or removes lines also rebuilds
+the nodes holding operators below it, as a Token's line is final.
+
+Anything the edit could change beyond that, a source with errors, or an edit that changes precedence outside
+of every grouping is tokenized or parsed again in full, so the tree is always the one a full parse of the
+edited source builds.
+ */
+class IncrementalParser {
+    private final boolean recovering;
+    private final NodeFactory.Measuring nodes = new NodeFactory.Measuring();
+    private String source;
+    // The tokens up to and including EOF, with the offset each one starts at.
+    private Token[] tokens = new Token[0];
+    private int[] starts = new int[0];
+    private int size = 0;
+    private Node root;
+    // Whether the source tokenized and parsed without errors.
+    private boolean clean;
+
+    IncrementalParser(String source, boolean recovering, ErrorReporter reporter) {
+        this.recovering = recovering;
+        this.source = source;
+        tokenize(reporter);
+    }
+
+    String source() {
+        return source;
+    }
+
+    // The tree of the current source, or null when it has syntax errors.
+    Node root() {
+        return clean ? root : null;
+    }
+
+    // Replaces `removed` characters at `offset` with `inserted`, and returns the new tree or null after
+    // reporting its syntax errors.
+    Node edit(int offset, int removed, String inserted, ErrorReporter reporter) {
+        if (offset < 0 || removed < 0 || offset + removed > source.length()) {
+            throw new IndexOutOfBoundsException("Edit of " + removed + " at " + offset + " in " + source.length());
+        }
+        int delta = inserted.length() - removed;
+        int lineDelta = newlines(inserted, 0, inserted.length()) - newlines(source, offset, offset + removed);
+        source = source.substring(0, offset) + inserted + source.substring(offset + removed);
+        if (!clean) return tokenize(reporter);
+
+        // The scan of a token looks at most one character past its end.
+        int kept = lastTokenEndingBefore(offset - 1);
+        int resumeAt = kept >= 0 ? starts[kept] + tokens[kept].lexeme.length() : 0;
+
+        Metrics.Span tokenizing = Metrics.global.begin(Metrics.Phase.TOKENIZE);
+        Diagnostics errors = new Diagnostics();
+        Tokenizer tokenizer = new Tokenizer(Source.of(source), resumeAt, kept >= 0 ? tokens[kept].line : 1, errors);
+        List<Token> scanned = new ArrayList<>();
+        int[] scannedStarts = new int[16];
+        int resumed;
+        while (true) {
+            Token token = tokenizer.next();
+            int start = tokenizer.tokenStart();
+            // Past the inserted text, scanning from the start of an old token gives the old tokens again.
+            if (start >= offset + inserted.length()) {
+                resumed = Arrays.binarySearch(starts, kept + 1, size, start - delta);
+                if (resumed >= 0) break;
+            }
+            if (scanned.size() == scannedStarts.length) scannedStarts = Arrays.copyOf(scannedStarts, scanned.size() * 2);
+            scannedStarts[scanned.size()] = start;
+            scanned.add(token);
+        }
+        if (tokenizing != null) tokenizing.end(scanned.size());
+        if (errors.hadError()) return tokenize(reporter);
+
+        // Old tokens [first, changedEnd) became new tokens [first, newChangedEnd), all others are unchanged
+        // but for their offset and, below the edit, their line.
+        int first = kept + 1;
+        int prefix = 0;
+        while (prefix < scanned.size() && first + prefix < resumed
+                && same(scanned.get(prefix), tokens[first + prefix], 0)) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < scanned.size() - prefix && resumed - suffix - 1 >= first + prefix
+                && same(scanned.get(scanned.size() - 1 - suffix), tokens[resumed - 1 - suffix], lineDelta)) {
+            suffix++;
+        }
+        int changed = first + prefix, changedEnd = resumed - suffix;
+        int newChangedEnd = first + scanned.size() - suffix;
+        splice(first, resumed, scanned, scannedStarts, prefix, suffix, delta, lineDelta);
+
+        Metrics.Span parsing = Metrics.global.begin(Metrics.Phase.PARSE);
+        int built = nodes.built;
+        Node updated = reparse(changed, changedEnd, newChangedEnd);
+        if (updated != null && lineDelta != 0) updated = relocate(updated, 0, newChangedEnd);
+        if (parsing != null) parsing.end(nodes.built - built);
+        if (updated == null) return parse(reporter);
+
+        root = updated;
+        return root;
+    }
+
+    /*
+    Tokens
+    */
+    private Node tokenize(ErrorReporter reporter) {
+        Metrics.Span tokenizing = Metrics.global.begin(Metrics.Phase.TOKENIZE);
+        Counting counting = new Counting(reporter);
+        Tokenizer tokenizer = new Tokenizer(Source.of(source), 0, 1, counting);
+        size = 0;
+        while (tokenizer.hasNext()) {
+            Token token = tokenizer.next();
+            ensureCapacity(size + 1);
+            tokens[size] = token;
+            starts[size++] = tokenizer.tokenStart();
+        }
+        if (tokenizing != null) tokenizing.end(size);
+
+        Node parsed = parse(counting);
+        clean = counting.errors == 0;
+        return clean ? parsed : null;
+    }
+
+    // Index of the last token before EOF that ends before `offset`, or -1.
+    private int lastTokenEndingBefore(int offset) {
+        int low = 0, high = size - 2;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (starts[middle] + tokens[middle].lexeme.length() < offset) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return high;
+    }
+
+    // Replaces the old tokens [first, resumed) with the scanned ones, keeping the old Token objects of the
+    // unchanged prefix and suffix, and moves the tokens after them.
+    private void splice(int first, int resumed, List<Token> scanned, int[] scannedStarts,
+                        int prefix, int suffix, int delta, int lineDelta) {
+        int newSize = first + scanned.size() + size - resumed;
+        ensureCapacity(newSize);
+        int moved = first + scanned.size() - suffix;
+        if (moved != resumed - suffix) {
+            System.arraycopy(tokens, resumed - suffix, tokens, moved, newSize - moved);
+            System.arraycopy(starts, resumed - suffix, starts, moved, newSize - moved);
+        }
+        if (delta != 0 || lineDelta != 0) {
+            for (int i = moved; i < newSize; i++) {
+                tokens[i] = shifted(tokens[i], lineDelta);
+                starts[i] += delta;
+            }
+        }
+        for (int i = 0; i < scanned.size(); i++) {
+            if (i >= prefix && i < scanned.size() - suffix) tokens[first + i] = scanned.get(i);
+            starts[first + i] = scannedStarts[i];
+        }
+        if (newSize < size) Arrays.fill(tokens, newSize, size, null);
+        size = newSize;
+    }
+
+    private static boolean same(Token token, Token old, int lineDelta) {
+        return token.type == old.type && token.line == old.line + lineDelta && token.lexeme.equals(old.lexeme);
+    }
+
+    private static Token shifted(Token token, int lineDelta) {
+        if (lineDelta == 0) return token;
+        return new Token(token.type, token.lexeme, token.literal, token.line + lineDelta);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= tokens.length) return;
+        int grown = Math.max(capacity, tokens.length * 2);
+        tokens = Arrays.copyOf(tokens, grown);
+        starts = Arrays.copyOf(starts, grown);
+    }
+
+    private static int newlines(String text, int start, int end) {
+        int count = 0;
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i) == '\n') count++;
+        }
+        return count;
+    }
+
+    /*
+    Tree
+    */
+    private Node parse(ErrorReporter reporter) {
+        Metrics.Span parsing = Metrics.global.begin(Metrics.Phase.PARSE);
+        Counting counting = new Counting(reporter);
+        Parser parser = new Parser(Arrays.asList(tokens).subList(0, size), counting).useNodeFactory(nodes);
+        if (recovering) parser.recovering();
+        root = parser.parse();
+        if (parsing != null) parsing.end(root != null ? Node.count(root) : 0);
+        clean = counting.errors == 0;
+        return clean ? root : null;
+    }
+
+    // Parses the smallest node around the old tokens [changed, changedEnd) again, now the new tokens
+    // [changed, newChangedEnd), or else the innermost grouping around them, and rebuilds the nodes above it.
+    // Returns null when neither can be replaced on its own.
+    private Node reparse(int changed, int changedEnd, int newChangedEnd) {
+        if (changed == changedEnd && changed == newChangedEnd) return root;
+        if (changedEnd > root.width) return null;
+
+        // The nodes from the root down, and for the deepest one and the innermost grouping the token it starts
+        // at and the nodes holding the operators right before and after it.
+        List<Node> path = new ArrayList<>();
+        int start = 0;
+        Node before = null, after = null;
+        int grouping = -1, groupingStart = 0;
+        Node groupingBefore = null, groupingAfter = null;
+        Node node = root;
+        while (true) {
+            if (node instanceof Node.Grouping) {
+                if (changed < start + 1 || changedEnd > start + node.width - 1) break;
+                grouping = path.size();
+                groupingStart = start;
+                groupingBefore = before;
+                groupingAfter = after;
+                path.add(node);
+                node = ((Node.Grouping)node).expression;
+                start += 1;
+                before = null;
+                after = null;
+            } else if (node instanceof Node.Binary) {
+                Node.Binary binary = (Node.Binary)node;
+                if (changedEnd <= start + binary.left.width) {
+                    path.add(node);
+                    node = binary.left;
+                    after = binary;
+                } else if (changed > start + binary.left.width) {
+                    path.add(node);
+                    start += binary.left.width + 1;
+                    node = binary.right;
+                    before = binary;
+                } else {
+                    break;
+                }
+            } else if (node instanceof Node.Unary) {
+                if (changed < start + 1) break;
+                path.add(node);
+                before = node;
+                node = ((Node.Unary)node).right;
+                start += 1;
+            } else {
+                break;
+            }
+        }
+        path.add(node);
+
+        int depth = path.size() - 1;
+        int delta = newChangedEnd - changedEnd;
+        Node replacement = reparseNode(node, start, power(before), power(after), delta);
+        if (replacement == null && grouping >= 0) {
+            depth = grouping;
+            replacement = reparseNode(path.get(grouping), groupingStart, power(groupingBefore), power(groupingAfter), delta);
+        }
+        if (replacement == null) return null;
+
+        Node old = path.get(depth);
+        for (int i = depth - 1; i >= 0; i--) {
+            Node parent = path.get(i);
+            Node rebuilt = replaceChild(parent, old, replacement);
+            old = parent;
+            replacement = rebuilt;
+        }
+        return replacement;
+    }
+
+    // Parses the tokens of `old`, which started at token `start` and is now `delta` tokens longer, again.
+    // Returns null when they no longer form a single node, or one whose root operator would lose part of its
+    // operands to the operator of power `before` it, unless it binds tighter, or `after` it, unless it binds
+    // at least as tight.
+    private Node reparseNode(Node old, int start, int before, int after, int delta) {
+        int end = start + old.width + delta;
+        if (end <= start) return null;
+
+        List<Token> range = new ArrayList<>(Arrays.asList(tokens).subList(start, end));
+        range.add(new Token(EOF, "", null, tokens[end - 1].line));
+        Diagnostics errors = new Diagnostics();
+        Node replacement = new Parser(range, errors).useNodeFactory(nodes).parse();
+        if (errors.hadError() || replacement.width != end - start) return null;
+
+        // Operators are left associative, the root of a binary node is its loosest binding operator.
+        if (replacement instanceof Node.Binary) {
+            int power = Parser.bindingPower(((Node.Binary)replacement).operator.type);
+            if (power <= before || power < after) return null;
+        }
+        return replacement;
+    }
+
+    // How tightly the operator of `node` binds the operand next to it, 0 for no operator.
+    private static int power(Node node) {
+        if (node == null) return 0;
+        if (node instanceof Node.Unary) return Parser.PREFIX;
+        return Parser.bindingPower(((Node.Binary)node).operator.type);
+    }
+
+    private Node replaceChild(Node parent, Node old, Node replacement) {
+        if (parent instanceof Node.Binary) {
+            Node.Binary binary = (Node.Binary)parent;
+            if (binary.left == old) return nodes.binary(replacement, binary.operator, binary.right);
+            return nodes.binary(binary.left, binary.operator, replacement);
+        } else if (parent instanceof Node.Unary) {
+            return nodes.unary(((Node.Unary)parent).operator, replacement);
+        }
+        return nodes.grouping(replacement);
+    }
+
+    // Rebuilds the nodes whose operator is at or after token `from` with that token's current line. The
+    // node's first token is at `start`.
+    private Node relocate(Node node, int start, int from) {
+        if (start + node.width <= from) return node;
+
+        if (node instanceof Node.Binary) {
+            // Down the left operands in a loop, like the parser builds them, so long chains do not recurse.
+            List<Node.Binary> chain = new ArrayList<>();
+            Node left = node;
+            while (left instanceof Node.Binary && start + left.width > from) {
+                chain.add((Node.Binary)left);
+                left = ((Node.Binary)left).left;
+            }
+            left = relocate(left, start, from);
+            for (int i = chain.size() - 1; i >= 0; i--) {
+                Node.Binary binary = chain.get(i);
+                int operatorAt = start + binary.left.width;
+                Node right = relocate(binary.right, operatorAt + 1, from);
+                Token operator = operatorAt >= from ? tokens[operatorAt] : binary.operator;
+                boolean unchanged = left == binary.left && operator == binary.operator && right == binary.right;
+                left = unchanged ? binary : nodes.binary(left, operator, right);
+            }
+            return left;
+        } else if (node instanceof Node.Grouping) {
+            Node.Grouping grouping = (Node.Grouping)node;
+            Node expression = relocate(grouping.expression, start + 1, from);
+            return expression == grouping.expression ? node : nodes.grouping(expression);
+        } else if (node instanceof Node.Unary) {
+            Node.Unary unary = (Node.Unary)node;
+            Node right = relocate(unary.right, start + 1, from);
+            Token operator = start >= from ? tokens[start] : unary.operator;
+            if (operator == unary.operator && right == unary.right) return node;
+            return nodes.unary(operator, right);
+        } else if (node instanceof Node.Variable) {
+            return tokens[start] == ((Node.Variable)node).name ? node : nodes.variable(tokens[start]);
+        }
+        return node;
+    }
+
+    // Passes errors on and counts them.
+    private static class Counting implements ErrorReporter {
+        Counting(ErrorReporter reporter) {
+            this.reporter = reporter;
+        }
+
+        @Override
+        public void report(int line, String where, String message) {
+            errors++;
+            reporter.report(line, where, message);
+        }
+
+        final ErrorReporter reporter;
+        int errors = 0;
+    }
+}
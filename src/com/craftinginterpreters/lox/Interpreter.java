@@ -1,104 +1,257 @@
 package com.craftinginterpreters.lox;
 
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
 public class Interpreter implements Node.Visitor<Object> {
+    // Results of shared nodes during the current evaluation.
+    private final Map<Node, Object> memo = new IdentityHashMap<>();
+    // Scratch space for formatting numbers, reused by every call on the same thread.
+    private static final ThreadLocal<StringBuilder> numberBuffer = ThreadLocal.withInitial(() -> new StringBuilder(32));
+    // Marks the point in the iterative walk where the node below it has its operands evaluated.
+    private static final Object EXIT = new Object();
+
+    private final boolean iterative;
+    private long evaluatedNodes = 0;
+    private Profiler profiler = null;
+    private Map<String, Object> variables = Collections.emptyMap();
+
+    Interpreter() {
+        this(false);
+    }
+
+    // An iterative interpreter evaluates with explicit stacks, for trees too deep to recurse over.
+    Interpreter(boolean iterative) {
+        this.iterative = iterative;
+    }
+
     void interpret(Node root) {
         try {
             Object result = evaluate(root);
-            String stringified;
-            if (result instanceof String) {
-                stringified = String.format("\"%s\"", result);
-            } else {
-                stringified = stringify(result);
-            }
-            System.out.println(stringified);
+            printResult(Lox.out, result);
         } catch (RuntimeError error) {
             Lox.runtimeError(error);
         }
     }
 
-    private Object evaluate(Node root) {
-        return root.accept(this);
+    Object evaluate(Node root) {
+        try {
+            return iterative ? evaluateIteratively(root) : evaluateNode(root);
+        } finally {
+            memo.clear();
+            if (profiler != null) profiler.clear();
+        }
+    }
+
+    // Values of the variables in the trees evaluated from now on, by name.
+    Interpreter bind(Map<String, Object> variables) {
+        this.variables = variables;
+        return this;
     }
 
-    private String stringify(Object value) {
+    // Keeps the profiler's shadow stack of operators up to date while evaluating.
+    Interpreter useProfiler(Profiler profiler) {
+        this.profiler = profiler;
+        return this;
+    }
+
+    // Nodes visited so far, for Metrics.
+    long evaluatedNodes() {
+        return evaluatedNodes;
+    }
+
+    private Object evaluateNode(Node node) {
+        evaluatedNodes++;
+        if (!node.shared) return node.accept(this);
+
+        // Evaluation is pure, a node shared by interning yields the same value everywhere it appears.
+        if (memo.containsKey(node)) return memo.get(node);
+        Object value = node.accept(this);
+        memo.put(node, value);
+        return value;
+    }
+
+    // Same order of evaluation as the visitor: left operand, right operand, then the operator.
+    private Object evaluateIteratively(Node root) {
+        Deque<Object> pending = new ArrayDeque<>();
+        Object[] values = new Object[64];
+        int top = 0;
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            Object item = pending.pop();
+            if (item == EXIT) {
+                Node node = (Node)pending.pop();
+                Object value;
+                if (node instanceof Node.Binary) {
+                    Node.Binary binary = (Node.Binary)node;
+                    top -= 2;
+                    value = binary(binary.operator, values[top], values[top + 1]);
+                } else {
+                    top -= 1;
+                    value = unary(((Node.Unary)node).operator, values[top]);
+                }
+                if (profiler != null) profiler.exit();
+                if (node.shared) memo.put(node, value);
+                values[top++] = value;
+                continue;
+            }
+
+            Node node = (Node)item;
+            evaluatedNodes++;
+            if (top == values.length) values = Arrays.copyOf(values, top * 2);
+            if (node.shared && memo.containsKey(node)) {
+                values[top++] = memo.get(node);
+            } else if (node instanceof Node.Binary) {
+                if (profiler != null) profiler.enter(node);
+                pending.push(node);
+                pending.push(EXIT);
+                pending.push(((Node.Binary)node).right);
+                pending.push(((Node.Binary)node).left);
+            } else if (node instanceof Node.Grouping) {
+                pending.push(((Node.Grouping)node).expression);
+            } else if (node instanceof Node.Unary) {
+                if (profiler != null) profiler.enter(node);
+                pending.push(node);
+                pending.push(EXIT);
+                pending.push(((Node.Unary)node).right);
+            } else if (node instanceof Node.Variable) {
+                values[top++] = visit((Node.Variable)node);
+            } else {
+                values[top++] = ((Node.Literal)node).value;
+            }
+        }
+        return values[0];
+    }
+
+    static String stringifyResult(Object result) {
+        if (isString(result)) return String.format("\"%s\"", result);
+        return stringify(result);
+    }
+
+    static void printResult(Output out, Object result) {
+        if (result instanceof Rope) {
+            // Written out piece by piece rather than flattened first.
+            out.append('"');
+            ((Rope)result).writeTo(out);
+            out.println("\"");
+        } else {
+            out.println(stringifyResult(result));
+        }
+    }
+
+    static String stringify(Object value) {
         if (value == null) return "nil";
         if (value instanceof Double) {
-            String text = value.toString();
-            if (text.endsWith(".0")) {
-                text = text.substring(0, text.length() - 2);
-            }
-            return text;
+            StringBuilder buffer = numberBuffer.get();
+            buffer.setLength(0);
+            appendNumber(buffer, (double)value);
+            return buffer.toString();
         }
         return value.toString();
     }
 
+    // Double.toString without the trailing ".0" of integral values.
+    static void appendNumber(StringBuilder out, double value) {
+        if (value == (long)value && Math.abs(value) < 1e7) {
+            // Integral values below 10^7 are printed without an exponent, just their digits.
+            if (value == 0 && Double.doubleToRawLongBits(value) != 0) out.append('-');
+            out.append((long)value);
+            return;
+        }
+
+        out.append(value);
+        int length = out.length();
+        if (out.charAt(length - 2) == '.' && out.charAt(length - 1) == '0') out.setLength(length - 2);
+    }
+
     @Override
     public Object visit(Node.Binary node) {
-        final Object left = evaluate(node.left);
-        final Object right = evaluate(node.right);
-        return switch (node.operator.type) {
+        if (profiler != null) profiler.enter(node);
+        final Object left = evaluateNode(node.left);
+        final Object right = evaluateNode(node.right);
+        final Object result = binary(node.operator, left, right);
+        if (profiler != null) profiler.exit();
+        return result;
+    }
+
+    static Object binary(Token operator, Object left, Object right) {
+        return switch (operator.type) {
             case EQUAL_EQUAL -> operatorEquals(left, right);
             case BANG_EQUAL -> !operatorEquals(left, right);
-            case PLUS -> operatorPlus(node.operator, left, right);
-            case STAR -> operatorStar(node.operator, left, right);
-            case GREATER -> tryCastNumber(node.operator, left) > tryCastNumber(node.operator, right);
-            case GREATER_EQUAL -> tryCastNumber(node.operator, left) >= tryCastNumber(node.operator, right);
-            case LESS -> tryCastNumber(node.operator, left) < tryCastNumber(node.operator, right);
-            case LESS_EQUAL -> tryCastNumber(node.operator, left) <= tryCastNumber(node.operator, right);
-            case MINUS -> tryCastNumber(node.operator, left) - tryCastNumber(node.operator, right);
-            case SLASH -> tryCastNumber(node.operator, left) / tryCastNumber(node.operator, right);
+            case PLUS -> operatorPlus(operator, left, right);
+            case STAR -> operatorStar(operator, left, right);
+            case GREATER -> tryCastNumber(operator, left) > tryCastNumber(operator, right);
+            case GREATER_EQUAL -> tryCastNumber(operator, left) >= tryCastNumber(operator, right);
+            case LESS -> tryCastNumber(operator, left) < tryCastNumber(operator, right);
+            case LESS_EQUAL -> tryCastNumber(operator, left) <= tryCastNumber(operator, right);
+            case MINUS -> tryCastNumber(operator, left) - tryCastNumber(operator, right);
+            case SLASH -> tryCastNumber(operator, left) / tryCastNumber(operator, right);
             default -> null;
         };
     }
 
-    private boolean operatorEquals(Object left, Object right) {
+    static boolean operatorEquals(Object left, Object right) {
         if (left == null && right == null) return true;
         if (left == null) return false;
+        if (isString(left) || isString(right)) return isString(left) && isString(right) && Rope.contentEquals(left, right);
         return left.equals(right);
     }
 
-    private Object operatorPlus(Token operator, Object left, Object right) {
+    static Object operatorPlus(Token operator, Object left, Object right) {
         if (canBeNumeric(left) && canBeNumeric(right)) {
             return toNumeric(operator, left) + toNumeric(operator, right);
         }
-        if (left instanceof String || right instanceof String) {
-            return stringify(left) + stringify(right);
+        if (isString(left) || isString(right)) {
+            return Rope.concat(isString(left) ? left : stringify(left), isString(right) ? right : stringify(right));
         }
         throw new RuntimeError(operator, String.format("Operator `+` is not valid for %s+%s", getTypeName(left), getTypeName(right)));
     }
 
-    private Object operatorStar(Token operator, Object left, Object right) {
+    static Object operatorStar(Token operator, Object left, Object right) {
         if (canBeNumeric(left) && canBeNumeric(right)) {
             return toNumeric(operator, left) * toNumeric(operator, right);
         }
-        if ((canBeNumeric(left) || canBeNumeric(right)) && (left instanceof String || right instanceof String)) {
+        if ((canBeNumeric(left) || canBeNumeric(right)) && (isString(left) || isString(right))) {
             int repeat;
-            String base;
+            Object base;
             if (canBeNumeric(left)) {
                 repeat = (int)toNumeric(operator, left);
-                base = (String)right;
+                base = right;
             } else {
                 repeat =  (int)toNumeric(operator, right);
-                base = (String)left;
+                base = left;
             }
-            return base.repeat(repeat);
+            return repeat(operator, base, repeat);
         }
         throw new RuntimeError(operator, String.format("Operator `*` is not valid for %s*%s", getTypeName(left), getTypeName(right)));
     }
 
-    private boolean toBoolean(Object value) {
+    static Object repeat(Token operator, Object base, int count) {
+        if (count < 0) throw new RuntimeError(operator, String.format("Cannot repeat a string %d times.", count));
+        return Rope.repeat(base, count);
+    }
+
+    static boolean toBoolean(Object value) {
         if (value == null) return false;
         if (value instanceof Boolean) return (boolean)value;
         if (value instanceof Double) return ((double)value) != 0;
-        if (value instanceof String) return !value.equals("");
+        if (isString(value)) return Rope.length(value) != 0;
         return false;
     }
 
-    private boolean canBeNumeric(Object value) {
+    static boolean isString(Object value) {
+        return value instanceof String || value instanceof Rope;
+    }
+
+    private static boolean canBeNumeric(Object value) {
         return (value instanceof Double || value instanceof Boolean);
     }
 
-    private double toNumeric(Token source, Object value) {
+    private static double toNumeric(Token source, Object value) {
         if (value instanceof Double) return (double)value;
         if (value instanceof Boolean) return ((boolean)value) ? 1.0 : 0.0;
         throw new RuntimeError(source, String.format("Cannot implicitly convert %s to a number", getTypeName(value)));
@@ -106,7 +259,7 @@ public class Interpreter implements Node.Visitor<Object> {
 
     @Override
     public Object visit(Node.Grouping node) {
-        return evaluate(node.expression);
+        return evaluateNode(node.expression);
     }
 
     @Override
@@ -116,25 +269,43 @@ public class Interpreter implements Node.Visitor<Object> {
 
     @Override
     public Object visit(Node.Unary node) {
-        final Object right = evaluate(node.right);
-        return switch (node.operator.type) {
+        if (profiler != null) profiler.enter(node);
+        final Object right = evaluateNode(node.right);
+        final Object result = unary(node.operator, right);
+        if (profiler != null) profiler.exit();
+        return result;
+    }
+
+    @Override
+    public Object visit(Node.Variable node) {
+        Object value = variables.get(node.name.lexeme);
+        if (value == null && !variables.containsKey(node.name.lexeme)) throw undefinedVariable(node.name);
+        return value;
+    }
+
+    static RuntimeError undefinedVariable(Token name) {
+        return new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
+    }
+
+    static Object unary(Token operator, Object right) {
+        return switch (operator.type) {
             case BANG -> !toBoolean(right);
-            case MINUS -> -tryCastNumber(node.operator, right);
+            case MINUS -> -tryCastNumber(operator, right);
             default -> null;
         };
     }
 
-    private double tryCastNumber(Token source, Object value) {
+    static double tryCastNumber(Token source, Object value) {
         if (canBeNumeric(value)) return toNumeric(source, value);
         throw new RuntimeError(source, String.format("Expected number, got %s instead.", getTypeName(value)));
     }
 
-    private String getTypeName(Object value) {
+    private static String getTypeName(Object value) {
         if (value == null) {
             return "nil";
         } else if (value instanceof Double) {
             return "number";
-        } else if (value instanceof String) {
+        } else if (isString(value)) {
             return "string";
         } else if (value instanceof Boolean) {
             return "boolean";
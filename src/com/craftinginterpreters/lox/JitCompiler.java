@@ -0,0 +1,550 @@
+package com.craftinginterpreters.lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+Compiles a tree into a hidden class whose single method evaluates it in straight-line JVM bytecode. Operands
+whose type is known are kept unboxed on the operand stack, numbers as doubles combined with dadd, dsub, dmul,
+ddiv and dneg and booleans as ints. Everything else goes through the Interpreter's helpers, so values, errors
+and the order errors are raised in are the Interpreter's. The hidden class is not held on to by its loader,
+it is unloaded once its Code is no longer reachable.
+ */
+class JitCompiler {
+    // HotSpot does not compile methods longer than this (HugeMethodLimit), larger trees are interpreted.
+    private static final int MAX_CODE_LENGTH = 8000;
+    private static final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+    private static final String CLASS_NAME = "com/craftinginterpreters/lox/CompiledTree";
+    private static final String CODE = "com/craftinginterpreters/lox/JitCompiler$Code";
+    private static final String JIT = "com/craftinginterpreters/lox/JitCompiler";
+    private static final String INTERPRETER = "com/craftinginterpreters/lox/Interpreter";
+    private static final String TOKEN = "com/craftinginterpreters/lox/Token";
+    private static final String OBJECT_DESCRIPTOR = "Ljava/lang/Object;", TOKEN_DESCRIPTOR = "L" + TOKEN + ";";
+
+    // Opcodes, from the JVM specification.
+    private static final int ACONST_NULL = 0x01, ICONST_0 = 0x03, ICONST_1 = 0x04, SIPUSH = 0x11,
+            LDC2_W = 0x14, DLOAD = 0x18, ALOAD = 0x19, ALOAD_0 = 0x2a, ALOAD_1 = 0x2b, AALOAD = 0x32,
+            DSTORE = 0x39, ASTORE = 0x3a, POP = 0x57, POP2 = 0x58, DADD = 0x63, DSUB = 0x67, DMUL = 0x6b,
+            DDIV = 0x6f, DNEG = 0x77, IXOR = 0x82, I2D = 0x87, ARETURN = 0xb0, RETURN = 0xb1, GETFIELD = 0xb4,
+            INVOKESPECIAL = 0xb7, INVOKESTATIC = 0xb8, CHECKCAST = 0xc0, WIDE = 0xc4;
+
+    // What a node leaves on the operand stack.
+    private static final byte DOUBLE = 0, BOOLEAN = 1, OBJECT = 2;
+
+    private final ConstantPool pool = new ConstantPool();
+    private final ByteArrayOutputStream codeBytes = new ByteArrayOutputStream();
+    private final DataOutputStream code = new DataOutputStream(codeBytes);
+    private final Map<Node, Byte> types = new IdentityHashMap<>();
+    private final List<Object> constants = new ArrayList<>();
+    private final Map<Object, Integer> constantIndices = new IdentityHashMap<>();
+    private int stack = 0, maxStack = 0;
+    private int locals = 1, maxLocals = 1;
+
+    // The generated class extends Code, its method returns what Interpreter.evaluate would.
+    abstract static class Code {
+        Code(Object[] constants) {
+            this.constants = constants;
+        }
+
+        abstract Object evaluate();
+
+        // Tokens and strings the generated code refers to.
+        final Object[] constants;
+    }
+
+    private static class Interpreted extends Code {
+        Interpreted(Node root) {
+            super(new Object[0]);
+            this.root = root;
+        }
+
+        @Override
+        Object evaluate() {
+            return new Interpreter().evaluate(root);
+        }
+
+        private final Node root;
+    }
+
+    static void interpret(Code code) {
+        try {
+            Object result = code.evaluate();
+            Interpreter.printResult(Lox.out, result);
+        } catch (RuntimeError error) {
+            Lox.runtimeError(error);
+        }
+    }
+
+    Code compile(Node root) {
+        if (exceeds(root, MAX_CODE_LENGTH / 2)) return new Interpreted(root);
+        try {
+            box(generate(root));
+            emit(ARETURN, -1);
+            if (codeBytes.size() > MAX_CODE_LENGTH || constants.size() > Short.MAX_VALUE) return new Interpreted(root);
+            return define(classFile());
+        } catch (IOException error) {
+            throw new UncheckedIOException(error);
+        }
+    }
+
+    // Whether the tree has more than `limit` nodes, nearly all of them generate two bytes or more. Walked with
+    // an explicit stack, which also keeps the recursion in generate shallow.
+    private static boolean exceeds(Node root, int limit) {
+        Deque<Node> pending = new ArrayDeque<>();
+        pending.push(root);
+        for (int count = 0; !pending.isEmpty(); count++) {
+            if (count > limit) return true;
+            Node node = pending.pop();
+            if (node instanceof Node.Binary) {
+                pending.push(((Node.Binary)node).right);
+                pending.push(((Node.Binary)node).left);
+            } else if (node instanceof Node.Grouping) {
+                pending.push(((Node.Grouping)node).expression);
+            } else if (node instanceof Node.Unary) {
+                pending.push(((Node.Unary)node).right);
+            }
+        }
+        return false;
+    }
+
+    private Code define(byte[] classFile) {
+        try {
+            MethodHandles.Lookup hidden = lookup.defineHiddenClass(classFile, true);
+            MethodHandle constructor = hidden.findConstructor(hidden.lookupClass(),
+                    MethodType.methodType(void.class, Object[].class));
+            return (Code)constructor.invoke(constants.toArray());
+        } catch (Throwable error) {
+            throw new IllegalStateException("Could not define the compiled tree", error);
+        }
+    }
+
+    /*
+    Static types, the same rules generate follows
+    */
+    private byte type(Node node) {
+        Byte known = types.get(node);
+        if (known != null) return known;
+
+        byte type = OBJECT;
+        if (node instanceof Node.Literal) {
+            Object value = ((Node.Literal)node).value;
+            if (value instanceof Double) type = DOUBLE;
+            if (value instanceof Boolean) type = BOOLEAN;
+        } else if (node instanceof Node.Grouping) {
+            type = type(((Node.Grouping)node).expression);
+        } else if (node instanceof Node.Unary) {
+            type = ((Node.Unary)node).operator.type == TokenType.BANG ? BOOLEAN : DOUBLE;
+        } else if (node instanceof Node.Binary) {
+            Node.Binary binary = (Node.Binary)node;
+            type = switch (binary.operator.type) {
+                case MINUS, SLASH -> DOUBLE;
+                case EQUAL_EQUAL, BANG_EQUAL, GREATER, GREATER_EQUAL, LESS, LESS_EQUAL -> BOOLEAN;
+                default -> type(binary.left) != OBJECT && type(binary.right) != OBJECT ? DOUBLE : OBJECT;
+            };
+        }
+        types.put(node, type);
+        return type;
+    }
+
+    /*
+    Code generation, in the Interpreter's order: left operand, right operand, then the operator's casts
+    */
+    private byte generate(Node node) throws IOException {
+        if (node instanceof Node.Literal) {
+            Object value = ((Node.Literal)node).value;
+            if (value instanceof Double) {
+                emitIndex(LDC2_W, pool.number((double)value), 2);
+            } else if (value instanceof Boolean) {
+                emit((boolean)value ? ICONST_1 : ICONST_0, 1);
+            } else if (value == null) {
+                emit(ACONST_NULL, 1);
+            } else {
+                loadConstant(value, null);
+            }
+        } else if (node instanceof Node.Variable) {
+            loadConstant(((Node.Variable)node).name, TOKEN);
+            invokeStatic(JIT, "variable", "(" + TOKEN_DESCRIPTOR + ")" + OBJECT_DESCRIPTOR);
+        } else if (node instanceof Node.Grouping) {
+            generate(((Node.Grouping)node).expression);
+        } else if (node instanceof Node.Unary) {
+            unary((Node.Unary)node);
+        } else {
+            binary((Node.Binary)node);
+        }
+        return type(node);
+    }
+
+    private void unary(Node.Unary node) throws IOException {
+        byte right = generate(node.right);
+        if (node.operator.type == TokenType.BANG) {
+            switch (right) {
+                case BOOLEAN -> not();
+                case DOUBLE -> invokeStatic(JIT, "not", "(D)Z");
+                default -> invokeStatic(JIT, "not", "(" + OBJECT_DESCRIPTOR + ")Z");
+            }
+        } else {
+            toDouble(right, node.operator);
+            emit(DNEG, 0);
+        }
+    }
+
+    private void binary(Node.Binary node) throws IOException {
+        byte leftType = type(node.left), rightType = type(node.right);
+        switch (node.operator.type) {
+            case MINUS -> {
+                doubles(node);
+                emit(DSUB, -2);
+            }
+            case SLASH -> {
+                doubles(node);
+                emit(DDIV, -2);
+            }
+            case GREATER -> compare(node, "greater");
+            case GREATER_EQUAL -> compare(node, "greaterEqual");
+            case LESS -> compare(node, "less");
+            case LESS_EQUAL -> compare(node, "lessEqual");
+            case EQUAL_EQUAL, BANG_EQUAL -> {
+                if (leftType == DOUBLE && rightType == DOUBLE) {
+                    generate(node.left);
+                    generate(node.right);
+                    invokeStatic(JIT, "equal", "(DD)Z");
+                } else if (leftType == BOOLEAN && rightType == BOOLEAN) {
+                    generate(node.left);
+                    generate(node.right);
+                    emit(IXOR, -1);
+                    not();
+                } else if (leftType != OBJECT && rightType != OBJECT) {
+                    // A number never equals a boolean.
+                    generate(node.left);
+                    generate(node.right);
+                    emit(rightType == DOUBLE ? POP2 : POP, rightType == DOUBLE ? -2 : -1);
+                    emit(leftType == DOUBLE ? POP2 : POP, leftType == DOUBLE ? -2 : -1);
+                    emit(ICONST_0, 1);
+                } else {
+                    box(generate(node.left));
+                    box(generate(node.right));
+                    invokeStatic(INTERPRETER, "operatorEquals", "(" + OBJECT_DESCRIPTOR + OBJECT_DESCRIPTOR + ")Z");
+                }
+                if (node.operator.type == TokenType.BANG_EQUAL) not();
+            }
+            default -> {
+                if (leftType != OBJECT && rightType != OBJECT) {
+                    // Numbers and booleans only, the sum or product of their numeric values.
+                    toDouble(generate(node.left), node.operator);
+                    toDouble(generate(node.right), node.operator);
+                    emit(node.operator.type == TokenType.PLUS ? DADD : DMUL, -2);
+                } else {
+                    box(generate(node.left));
+                    box(generate(node.right));
+                    loadConstant(node.operator, TOKEN);
+                    invokeStatic(JIT, "binary", "(" + OBJECT_DESCRIPTOR + OBJECT_DESCRIPTOR + TOKEN_DESCRIPTOR + ")" + OBJECT_DESCRIPTOR);
+                }
+            }
+        }
+    }
+
+    private void compare(Node.Binary node, String helper) throws IOException {
+        doubles(node);
+        invokeStatic(JIT, helper, "(DD)Z");
+    }
+
+    // Leaves both operands as doubles. A left operand of unknown type is cast after the right operand is
+    // evaluated, so an error in the right operand comes first, as in the Interpreter.
+    private void doubles(Node.Binary node) throws IOException {
+        byte left = generate(node.left);
+        if (left != OBJECT) {
+            toDouble(left, node.operator);
+            toDouble(generate(node.right), node.operator);
+            return;
+        }
+
+        byte right = generate(node.right);
+        int temporary = locals;
+        if (right == OBJECT) {
+            allocateLocals(1);
+            emitLocal(ASTORE, temporary, -1);
+            toDouble(OBJECT, node.operator);
+            emitLocal(ALOAD, temporary, 1);
+            toDouble(OBJECT, node.operator);
+            locals -= 1;
+        } else {
+            toDouble(right, node.operator);
+            allocateLocals(2);
+            emitLocal(DSTORE, temporary, -2);
+            toDouble(OBJECT, node.operator);
+            emitLocal(DLOAD, temporary, 2);
+            locals -= 2;
+        }
+    }
+
+    private void toDouble(byte type, Token operator) throws IOException {
+        if (type == BOOLEAN) {
+            emit(I2D, 1);
+        } else if (type == OBJECT) {
+            loadConstant(operator, TOKEN);
+            invokeStatic(JIT, "toNumber", "(" + OBJECT_DESCRIPTOR + TOKEN_DESCRIPTOR + ")D");
+        }
+    }
+
+    private void box(byte type) throws IOException {
+        if (type == DOUBLE) {
+            invokeStatic("java/lang/Double", "valueOf", "(D)Ljava/lang/Double;");
+        } else if (type == BOOLEAN) {
+            invokeStatic("java/lang/Boolean", "valueOf", "(Z)Ljava/lang/Boolean;");
+        }
+    }
+
+    private void not() throws IOException {
+        emit(ICONST_1, 1);
+        emit(IXOR, -1);
+    }
+
+    // Pushes constants[index], cast to `type` unless it is null.
+    private void loadConstant(Object value, String type) throws IOException {
+        int index = constantIndices.computeIfAbsent(value, key -> {
+            constants.add(key);
+            return constants.size() - 1;
+        });
+        emit(ALOAD_0, 1);
+        emitIndex(GETFIELD, pool.field(CODE, "constants", "[" + OBJECT_DESCRIPTOR), 0);
+        emit(SIPUSH, 1);
+        code.writeShort(index);
+        emit(AALOAD, -1);
+        if (type != null) emitIndex(CHECKCAST, pool.classEntry(type), 0);
+    }
+
+    private void invokeStatic(String owner, String name, String descriptor) throws IOException {
+        emitIndex(INVOKESTATIC, pool.method(owner, name, descriptor), slots(descriptor));
+    }
+
+    // The stack effect of calling a static method, its result's slots less its parameters' slots.
+    private static int slots(String descriptor) {
+        int slots = 0;
+        int i = 1;
+        while (descriptor.charAt(i) != ')') {
+            char c = descriptor.charAt(i);
+            slots -= c == 'D' || c == 'J' ? 2 : 1;
+            if (c == 'L') i = descriptor.indexOf(';', i);
+            if (c == '[') {
+                while (descriptor.charAt(i) == '[') i++;
+                if (descriptor.charAt(i) == 'L') i = descriptor.indexOf(';', i);
+            }
+            i++;
+        }
+        char result = descriptor.charAt(i + 1);
+        return slots + (result == 'V' ? 0 : result == 'D' || result == 'J' ? 2 : 1);
+    }
+
+    private void allocateLocals(int count) {
+        locals += count;
+        maxLocals = Math.max(maxLocals, locals);
+    }
+
+    private void emit(int opcode, int stackEffect) throws IOException {
+        code.writeByte(opcode);
+        stack += stackEffect;
+        maxStack = Math.max(maxStack, stack);
+    }
+
+    private void emitIndex(int opcode, int index, int stackEffect) throws IOException {
+        emit(opcode, stackEffect);
+        code.writeShort(index);
+    }
+
+    private void emitLocal(int opcode, int index, int stackEffect) throws IOException {
+        if (index > 255) {
+            emit(WIDE, 0);
+            emit(opcode, stackEffect);
+            code.writeShort(index);
+        } else {
+            emit(opcode, stackEffect);
+            code.writeByte(index);
+        }
+    }
+
+    /*
+    Class file, see chapter 4 of the JVM specification. The methods have no branches, so no stack map
+    frames are needed.
+    */
+    private byte[] classFile() throws IOException {
+        int thisClass = pool.classEntry(CLASS_NAME);
+        int superClass = pool.classEntry(CODE);
+        int codeName = pool.utf8("Code");
+        int constructorName = pool.utf8("<init>"), constructorDescriptor = pool.utf8("([" + OBJECT_DESCRIPTOR + ")V");
+        int superConstructor = pool.method(CODE, "<init>", "([" + OBJECT_DESCRIPTOR + ")V");
+        int evaluateName = pool.utf8("evaluate"), evaluateDescriptor = pool.utf8("()" + OBJECT_DESCRIPTOR);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(59); // Java 15
+        pool.writeTo(out);
+        out.writeShort(0x0010 | 0x0020); // ACC_FINAL | ACC_SUPER
+        out.writeShort(thisClass);
+        out.writeShort(superClass);
+        out.writeShort(0); // Interfaces
+        out.writeShort(0); // Fields
+        out.writeShort(2); // Methods
+
+        byte[] constructor = { (byte)ALOAD_0, (byte)ALOAD_1, (byte)INVOKESPECIAL,
+                (byte)(superConstructor >>> 8), (byte)superConstructor, (byte)RETURN };
+        writeMethod(out, constructorName, constructorDescriptor, codeName, 2, 2, constructor);
+        writeMethod(out, evaluateName, evaluateDescriptor, codeName, maxStack, maxLocals, codeBytes.toByteArray());
+
+        out.writeShort(0); // Attributes
+        return bytes.toByteArray();
+    }
+
+    private static void writeMethod(DataOutputStream out, int name, int descriptor, int codeName,
+                                    int maxStack, int maxLocals, byte[] code) throws IOException {
+        out.writeShort(0); // Package access, like Code's methods.
+        out.writeShort(name);
+        out.writeShort(descriptor);
+        out.writeShort(1);
+        out.writeShort(codeName);
+        out.writeInt(2 + 2 + 4 + code.length + 2 + 2);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(code.length);
+        out.write(code);
+        out.writeShort(0); // Exception table
+        out.writeShort(0); // Attributes
+    }
+
+    private static class ConstantPool {
+        private static final int UTF8 = 1, DOUBLE = 6, CLASS = 7, FIELD = 9, METHOD = 10, NAME_AND_TYPE = 12;
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        private final Map<String, Integer> indices = new HashMap<>();
+        private int count = 1;
+
+        int utf8(String text) throws IOException {
+            Integer index = indices.get("U" + text);
+            if (index != null) return index;
+            out.writeByte(UTF8);
+            out.writeUTF(text);
+            return add("U" + text, 1);
+        }
+
+        int classEntry(String name) throws IOException {
+            Integer index = indices.get("C" + name);
+            if (index != null) return index;
+            int nameIndex = utf8(name);
+            out.writeByte(CLASS);
+            out.writeShort(nameIndex);
+            return add("C" + name, 1);
+        }
+
+        // Keyed on the raw bits so that 0 and -0 stay distinct constants.
+        int number(double value) throws IOException {
+            String key = "D" + Double.doubleToRawLongBits(value);
+            Integer index = indices.get(key);
+            if (index != null) return index;
+            out.writeByte(DOUBLE);
+            out.writeDouble(value);
+            return add(key, 2);
+        }
+
+        int field(String owner, String name, String descriptor) throws IOException {
+            return member(FIELD, owner, name, descriptor);
+        }
+
+        int method(String owner, String name, String descriptor) throws IOException {
+            return member(METHOD, owner, name, descriptor);
+        }
+
+        private int member(int tag, String owner, String name, String descriptor) throws IOException {
+            String key = tag + owner + "." + name + descriptor;
+            Integer index = indices.get(key);
+            if (index != null) return index;
+            int ownerIndex = classEntry(owner);
+            int nameAndType = nameAndType(name, descriptor);
+            out.writeByte(tag);
+            out.writeShort(ownerIndex);
+            out.writeShort(nameAndType);
+            return add(key, 1);
+        }
+
+        private int nameAndType(String name, String descriptor) throws IOException {
+            String key = "N" + name + descriptor;
+            Integer index = indices.get(key);
+            if (index != null) return index;
+            int nameIndex = utf8(name), descriptorIndex = utf8(descriptor);
+            out.writeByte(NAME_AND_TYPE);
+            out.writeShort(nameIndex);
+            out.writeShort(descriptorIndex);
+            return add(key, 1);
+        }
+
+        private int add(String key, int slots) {
+            int index = count;
+            indices.put(key, index);
+            count += slots;
+            return index;
+        }
+
+        void writeTo(DataOutputStream file) throws IOException {
+            file.writeShort(count);
+            file.write(bytes.toByteArray());
+        }
+    }
+
+    /*
+    Helpers the generated code calls, with the operands in the order they are on the stack
+    */
+    static double toNumber(Object value, Token operator) {
+        return Interpreter.tryCastNumber(operator, value);
+    }
+
+    static Object binary(Object left, Object right, Token operator) {
+        return Interpreter.binary(operator, left, right);
+    }
+
+    static boolean equal(double left, double right) {
+        // As Double.equals, NaN equals NaN and 0 does not equal -0.
+        return Double.doubleToLongBits(left) == Double.doubleToLongBits(right);
+    }
+
+    static boolean greater(double left, double right) {
+        return left > right;
+    }
+
+    static boolean greaterEqual(double left, double right) {
+        return left >= right;
+    }
+
+    static boolean less(double left, double right) {
+        return left < right;
+    }
+
+    static boolean lessEqual(double left, double right) {
+        return left <= right;
+    }
+
+    static boolean not(double value) {
+        return value == 0;
+    }
+
+    static boolean not(Object value) {
+        return !Interpreter.toBoolean(value);
+    }
+
+    static Object variable(Token name) {
+        throw Interpreter.undefinedVariable(name);
+    }
+}
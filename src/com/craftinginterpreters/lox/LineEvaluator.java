@@ -0,0 +1,104 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+Evaluates one self-contained expression with its own error collection, for callers that run many of them
+side by side. An instance keeps engine state around between calls and must stay on one thread.
+
+A tree found in the parse cache is run from what it was compiled into the first time. With the JIT engine
+a tree is only compiled once the cache hands it out again, a line evaluated once is interpreted, as
+defining a class for it costs more than interpreting it.
+ */
+class LineEvaluator {
+    static class Result {
+        Result(String value, List<String> errors, boolean runtimeError) {
+            this.value = value;
+            this.errors = errors;
+            this.runtimeError = runtimeError;
+        }
+
+        // The result as the prompt would print it, or null when there are errors.
+        final String value;
+        final List<String> errors;
+        final boolean runtimeError;
+    }
+
+    private final Lox.Engine engine;
+    private final ParseCache cache;
+    private final boolean recovering;
+    private final boolean iterative;
+    private final Interpreter interpreter;
+    private final VM vm = new VM();
+
+    LineEvaluator(Lox.Engine engine, ParseCache cache, boolean recovering, boolean iterative) {
+        this.engine = engine;
+        this.cache = cache;
+        this.recovering = recovering;
+        this.iterative = iterative;
+        this.interpreter = new Interpreter(iterative);
+    }
+
+    Result evaluate(String script, int line) {
+        // Scripts are parsed as if they started on line 1, so the same tree serves the script on any line,
+        // and every reported line is shifted afterwards.
+        final int lineOffset = line - 1;
+        List<String> errors = new ArrayList<>(1);
+        ErrorReporter reporter = (errorLine, where, message) ->
+                errors.add(String.format("[line %d]: Error %s: %s", errorLine + lineOffset, where, message));
+
+        ParseCache.Entry cached = cache != null ? cache.get(script) : null;
+        boolean reused = cached != null;
+        Node root = reused ? cached.root : null;
+        if (root == null) {
+            Metrics.Span tokenizing = Metrics.global.begin(Metrics.Phase.TOKENIZE);
+            List<Token> tokens = new Tokenizer(script, 1, reporter).tokenize();
+            if (tokenizing != null) tokenizing.end(tokens.size());
+
+            Metrics.Span parsing = Metrics.global.begin(Metrics.Phase.PARSE);
+            Parser parser = new Parser(tokens, reporter);
+            if (recovering) parser.recovering();
+            if (iterative) parser.iterative();
+            try {
+                root = parser.parse();
+            } catch (StackOverflowError error) {
+                errors.add(tooDeep(line));
+                return new Result(null, errors, false);
+            }
+            if (parsing != null) parsing.end(root != null ? Node.count(root) : 0);
+            if (!errors.isEmpty()) return new Result(null, errors, false);
+            if (cache != null) cached = cache.put(script, root);
+        }
+
+        Metrics.Span evaluating = Metrics.global.begin(Metrics.Phase.EVALUATE);
+        long evaluated = evaluatedNodes();
+        try {
+            Object result = switch (engine) {
+                case VM -> vm.run(cached != null ? cached.chunk(root) : new Compiler().compile(root));
+                case SPECIALIZING -> (cached != null ? cached.specialized(root) : new Specializer().specialize(root)).execute();
+                case JIT -> reused ? cached.code(root).evaluate() : interpreter.evaluate(root);
+                default -> interpreter.evaluate(root);
+            };
+            return new Result(Interpreter.stringifyResult(result), errors, false);
+        } catch (RuntimeError error) {
+            errors.add(String.format("[line %d]: %s", error.token.line + lineOffset, error.getMessage()));
+            return new Result(null, errors, true);
+        } catch (StackOverflowError error) {
+            // Only the interpreter and parser have iterative forms, the other engines still recurse.
+            errors.add(tooDeep(line));
+            return new Result(null, errors, true);
+        } finally {
+            if (evaluating != null) evaluating.end(evaluatedNodes() - evaluated);
+        }
+    }
+
+    private static String tooDeep(int line) {
+        return String.format("[line %d]: Expression is nested too deeply.", line);
+    }
+
+    // Only the engine in use counts, the other stays put.
+    private long evaluatedNodes() {
+        return interpreter.evaluatedNodes() + vm.executedInstructions();
+    }
+}
@@ -3,34 +3,248 @@ package com.craftinginterpreters.lox;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.Reader;
 import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.EnumSet;
 import java.util.List;
 
 public class Lox {
+    public enum Engine { INTERPRETER, VM, SPECIALIZING, JIT }
+
     static boolean hadError = false;
     static boolean hadRuntimeError = false;
+    static final ErrorReporter console = Lox::report;
+    static Output out = new Output(System.out, false, false);
 
-    private static final Interpreter interpreter = new Interpreter();
-    private static final ASTPrinter ASTPrinter = new ASTPrinter();
+    private static Interpreter interpreter = new Interpreter();
+    private static final VM vm = new VM();
+    private static final Specializer specializer = new Specializer();
+    private static ASTPrinter ASTPrinter = new ASTPrinter();
+    private static Engine engine = Engine.INTERPRETER;
+    private static Optimizer optimizer = null;
+    private static boolean optimizerReport = false;
+    private static boolean streaming = false;
+    private static boolean mapped = false;
+    private static boolean compactTokens = false;
+    private static boolean batch = false;
+    private static int serverPort = -1;
+    private static ParseCache parseCache = null;
+    private static boolean intern = false;
+    private static boolean compileCache = false;
+    private static boolean allErrors = false;
+    private static boolean iterative = false;
+    private static boolean stats = false;
+    private static String profilePath = null;
+    private static Profiler profiler = null;
 
     public static void main(String[] args) throws IOException {
-        if (args.length > 1) {
-            System.out.println("Usage: jlox [script]");
-            System.exit(64);
-        } else if (args.length == 1) {
-            runFile(args[0]);
-        } else {
-            runPrompt();
+        String script = null;
+        boolean plain = false, asyncOutput = false;
+        for (String arg : args) {
+            if (arg.startsWith("--engine=")) {
+                engine = parseEngine(arg.substring("--engine=".length()));
+            } else if (arg.equals("--optimize")) {
+                optimizer = new Optimizer();
+            } else if (arg.startsWith("--optimize=")) {
+                optimizer = new Optimizer(parsePasses(arg.substring("--optimize=".length())));
+            } else if (arg.equals("--optimize-report")) {
+                optimizerReport = true;
+            } else if (arg.equals("--stream")) {
+                streaming = true;
+            } else if (arg.equals("--mmap")) {
+                mapped = true;
+            } else if (arg.equals("--compact-tokens")) {
+                compactTokens = true;
+            } else if (arg.equals("--intern")) {
+                intern = true;
+            } else if (arg.equals("--compile-cache")) {
+                compileCache = true;
+            } else if (arg.equals("--stats")) {
+                stats = true;
+            } else if (arg.equals("--jmx")) {
+                Metrics.global.registerMBean();
+            } else if (arg.startsWith("--profile=") && arg.length() > "--profile=".length()) {
+                profilePath = arg.substring("--profile=".length());
+            } else if (arg.equals("--iterative")) {
+                iterative = true;
+            } else if (arg.equals("--all-errors")) {
+                allErrors = true;
+            } else if (arg.equals("--plain")) {
+                plain = true;
+            } else if (arg.equals("--async-output")) {
+                asyncOutput = true;
+            } else if (arg.equals("--batch")) {
+                batch = true;
+            } else if (arg.startsWith("--parse-cache=")) {
+                parseCache = parseCacheOption(arg.substring("--parse-cache=".length()));
+            } else if (arg.startsWith("--server=")) {
+                serverPort = parsePort(arg.substring("--server=".length()));
+            } else if (script == null && !arg.startsWith("--")) {
+                script = arg;
+            } else {
+                usage();
+            }
+        }
+
+        if (serverPort >= 0 && script != null || batch && script == null) usage();
+        // The cache hashes the whole script up front, which is what mapping and streaming avoid.
+        if (compileCache && (mapped || streaming)) usage();
+        // The profiler follows the tree-walking interpreter on the main thread.
+        if (profilePath != null && (engine != Engine.INTERPRETER || batch || serverPort >= 0)) usage();
+        out = new Output(System.out, plain, asyncOutput);
+        if (stats) Metrics.global.enable();
+        if (iterative) {
+            interpreter = new Interpreter(true);
+            ASTPrinter = new ASTPrinter(true);
+        }
+        if (profilePath != null) {
+            profiler = new Profiler(Thread.currentThread());
+            interpreter.useProfiler(profiler);
+            profiler.start();
+        }
+
+        try {
+            if (serverPort >= 0) {
+                new LoxServer(engine, parseCache, allErrors, iterative).serve(serverPort);
+            } else if (batch) {
+                runBatch(script);
+            } else if (script != null) {
+                runFile(script);
+            } else {
+                runPrompt();
+            }
+        } finally {
+            close();
         }
     }
 
+    private static Engine parseEngine(String name) {
+        for (Engine value : Engine.values()) {
+            if (value.name().equalsIgnoreCase(name)) return value;
+        }
+        usage();
+        return null;
+    }
+
+    private static int parsePort(String port) {
+        try {
+            int value = Integer.parseInt(port);
+            if (value >= 0 && value <= 65535) return value;
+        } catch (NumberFormatException error) {
+            // Falls through to the usage message.
+        }
+        usage();
+        return -1;
+    }
+
+    private static ParseCache parseCacheOption(String option) {
+        String[] limits = option.split(",");
+        try {
+            int entries = Integer.parseInt(limits[0]);
+            long bytes = limits.length > 1 ? Long.parseLong(limits[1]) : Long.MAX_VALUE;
+            if (limits.length <= 2 && entries > 0 && bytes > 0) return new ParseCache(entries, bytes);
+        } catch (NumberFormatException error) {
+            // Falls through to the usage message.
+        }
+        usage();
+        return null;
+    }
+
+    private static EnumSet<Optimizer.Pass> parsePasses(String names) {
+        EnumSet<Optimizer.Pass> passes = EnumSet.noneOf(Optimizer.Pass.class);
+        for (String name : names.split(",")) {
+            Optimizer.Pass pass = Optimizer.Pass.fromFlag(name);
+            if (pass == null) usage();
+            passes.add(pass);
+        }
+        return passes;
+    }
+
+    private static void usage() {
+        System.out.println("Usage: jlox [options] [script]");
+        System.out.println("  --engine=interpreter|vm|specializing|jit");
+        System.out.println("  --optimize[=groupings,fold,negation,identities]");
+        System.out.println("  --optimize-report");
+        System.out.println("  --stream");
+        System.out.println("  --mmap");
+        System.out.println("  --compact-tokens");
+        System.out.println("  --intern");
+        System.out.println("  --compile-cache");
+        System.out.println("  --stats");
+        System.out.println("  --jmx");
+        System.out.println("  --profile=path");
+        System.out.println("  --iterative");
+        System.out.println("  --all-errors");
+        System.out.println("  --plain");
+        System.out.println("  --async-output");
+        System.out.println("  --batch");
+        System.out.println("  --server=port");
+        System.out.println("  --parse-cache=entries[,bytes]");
+        System.exit(64);
+    }
+
     private static void runFile(String path) throws IOException {
-        byte[] bytes = Files.readAllBytes(Paths.get(path));
-        run(new String(bytes, Charset.defaultCharset()));
-        if (hadError) System.exit(65);
-        if (hadRuntimeError) System.exit(70);
+        if (mapped) {
+            try (Source source = Source.map(Paths.get(path))) {
+                runTokens(new Tokenizer(source));
+            }
+        } else if (streaming) {
+            try (Reader reader = newReader(Paths.get(path))) {
+                runTokens(new Tokenizer(reader));
+            }
+        } else if (compileCache) {
+            runCached(Paths.get(path));
+        } else {
+            byte[] bytes = Files.readAllBytes(Paths.get(path));
+            run(new String(bytes, Charset.defaultCharset()));
+        }
+        if (hadError) exit(65);
+        if (hadRuntimeError) exit(70);
+    }
+
+    // Malformed input is replaced, as new String(bytes, charset) does for a script read in full, where
+    // Files.newBufferedReader would fail on it.
+    private static BufferedReader newReader(Path path) throws IOException {
+        return new BufferedReader(new InputStreamReader(Files.newInputStream(path), Charset.defaultCharset().newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE)));
+    }
+
+    private static void runBatch(String path) throws IOException {
+        BatchRunner runner = new BatchRunner(engine, parseCache, allErrors, iterative);
+        try (BufferedReader reader = newReader(Paths.get(path))) {
+            runner.run(reader, out);
+        }
+        if (runner.syntaxErrors() > 0) exit(65);
+        if (runner.runtimeErrors() > 0) exit(70);
+    }
+
+    private static void exit(int status) {
+        close();
+        System.exit(status);
+    }
+
+    private static void close() {
+        out.close();
+        if (stats) {
+            // After the output, on stderr, so results read by other programs are left as they are.
+            System.err.print(Metrics.global.summary());
+            if (parseCache != null) System.err.println(parseCache);
+        }
+        if (profiler != null) {
+            profiler.stop();
+            profiler.report(System.err);
+            try {
+                profiler.writeCollapsedStacks(Paths.get(profilePath));
+            } catch (IOException error) {
+                System.err.println("Could not write profile: " + error.getMessage());
+            }
+            profiler = null;
+        }
     }
 
     private static void runPrompt() throws IOException {
@@ -38,7 +252,8 @@ public class Lox {
         BufferedReader reader = new BufferedReader(input);
 
         while (true) {
-            System.out.print("> ");
+            out.append("> ");
+            out.flush();
             String line = reader.readLine();
             if (line == null) break;
             run(line);
@@ -46,41 +261,115 @@ public class Lox {
         }
     }
 
-    private static void run(String script) {
-        Tokenizer tokenizer = new Tokenizer(script);
-        List<Token> tokens = tokenizer.tokenize();
-
-        Parser parser = new Parser(tokens);
+    private static void runTokens(Tokenizer tokenizer) {
+        // Tokens are scanned as the parser asks for them, so tokenizing is measured as part of parsing.
+        Metrics.Span parsing = Metrics.global.begin(Metrics.Phase.PARSE);
+        Parser parser = new Parser(tokenizer);
+        if (allErrors) parser.recovering();
+        if (iterative) parser.iterative();
         Node root = parser.parse();
 
-        if (hadError) return; // Stop if an error has occurred previously.
+        // Scan whatever the parser left over, so that its errors are still reported.
+        while (tokenizer.hasNext()) tokenizer.next();
+        if (parsing != null) parsing.end(root != null ? Node.count(root) : 0);
+
+        evaluate(root);
+    }
 
-        System.out.println(ASTPrinter.stringify(root));
+    private static void runCached(Path path) throws IOException {
+        byte[] bytes = Files.readAllBytes(path);
+        ScriptCache cache = new ScriptCache(path, bytes, Charset.defaultCharset(), allErrors);
+        Node root = cache.load();
+        if (root == null) {
+            root = parse(new String(bytes, Charset.defaultCharset()));
+            if (!hadError) cache.store(root);
+        }
 
-        interpreter.interpret(root);
-        System.err.flush();
-        System.out.flush();
+        evaluate(root);
     }
 
-    static void error(int line, String message) {
-        report(line, "", message);
+    static void run(String script) {
+        ParseCache.Entry cached = parseCache != null ? parseCache.get(script) : null;
+        if (cached == null) {
+            Node root = parse(script);
+            if (parseCache != null && !hadError) cached = parseCache.put(script, root);
+            if (cached == null) {
+                evaluate(root);
+                return;
+            }
+        }
+
+        evaluate(cached.root, cached);
     }
 
-    static void error(Token token, String message) {
-        if (token.type == TokenType.EOF) {
-            report(token.line, "at end", message);
+    private static Node parse(String script) {
+        Metrics.Span tokenizing = Metrics.global.begin(Metrics.Phase.TOKENIZE);
+        Tokenizer tokenizer = new Tokenizer(script);
+        Parser parser;
+        if (compactTokens) {
+            TokenBuffer tokens = tokenizer.tokenizeCompact();
+            if (tokenizing != null) tokenizing.end(tokens.size());
+            parser = new Parser(tokens);
         } else {
-            report(token.line, "at '" + token.lexeme + "'", message);
+            List<Token> tokens = tokenizer.tokenize();
+            if (tokenizing != null) tokenizing.end(tokens.size());
+            parser = new Parser(tokens);
         }
+
+        Metrics.Span parsing = Metrics.global.begin(Metrics.Phase.PARSE);
+        if (intern) parser.useNodeFactory(new NodeFactory.Interning());
+        if (allErrors) parser.recovering();
+        if (iterative) parser.iterative();
+        Node root = parser.parse();
+        if (parsing != null) parsing.end(root != null ? Node.count(root) : 0);
+        return root;
+    }
+
+    private static void evaluate(Node root) {
+        evaluate(root, null);
+    }
+
+    // With a cache entry, the engine runs what the entry's tree was compiled into the first time.
+    private static void evaluate(Node root, ParseCache.Entry cached) {
+        if (hadError) return; // Stop if an error has occurred previously.
+
+        Metrics.Span printing = Metrics.global.begin(Metrics.Phase.PRINT);
+        String tree = ASTPrinter.stringify(root);
+        out.println(tree);
+        if (printing != null) printing.end(tree.length());
+
+        if (optimizer != null) {
+            root = optimizer.optimize(root);
+            if (optimizerReport) out.println(optimizer.report());
+        }
+
+        Metrics.Span evaluating = Metrics.global.begin(Metrics.Phase.EVALUATE);
+        long evaluated = evaluatedNodes();
+        switch (engine) {
+            case VM -> vm.interpret(cached != null ? cached.chunk(root) : new Compiler().compile(root));
+            case SPECIALIZING -> specializer.interpret(cached != null ? cached.specialized(root) : specializer.specialize(root));
+            case JIT -> JitCompiler.interpret(cached != null ? cached.code(root) : new JitCompiler().compile(root));
+            default -> interpreter.interpret(root);
+        }
+        if (evaluating != null) evaluating.end(evaluatedNodes() - evaluated);
+    }
+
+    // Evaluated nodes, or instructions for the VM. The specializing and JIT engines do not count them.
+    private static long evaluatedNodes() {
+        return switch (engine) {
+            case VM -> vm.executedInstructions();
+            case SPECIALIZING, JIT -> 0;
+            default -> interpreter.evaluatedNodes();
+        };
     }
 
     private static void report(int line, String where, String message) {
-        System.out.printf("\u001B[31m[line %d]: Error %s: %s%n\u001B[0m", line, where, message);
+        out.error(String.format("[line %d]: Error %s: %s%n", line, where, message));
         hadError = true;
     }
 
     static void runtimeError(RuntimeError error) {
-        System.out.printf("\u001B[31m[line %d]: %s\u001B[0m\n", error.token.line, error.getMessage());
+        out.error(String.format("[line %d]: %s", error.token.line, error.getMessage())).append('\n');
         hadRuntimeError = true;
     }
 }
\ No newline at end of file
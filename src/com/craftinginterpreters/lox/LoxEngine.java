@@ -0,0 +1,50 @@
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+
+/*
+Entry point for embedding the interpreter. A source is compiled once into a CompiledExpression, which any
+number of threads can then evaluate at the same time. Errors go to the Diagnostics passed to each call,
+never to the static state in Lox.
+ */
+public class LoxEngine {
+    private final Lox.Engine engine;
+    private final boolean optimize;
+
+    public LoxEngine() {
+        this(Lox.Engine.INTERPRETER, false);
+    }
+
+    public LoxEngine(Lox.Engine engine, boolean optimize) {
+        this.engine = engine;
+        this.optimize = optimize;
+    }
+
+    // Returns null when the source has syntax errors, after adding all of them to the diagnostics.
+    public CompiledExpression compile(String source, Diagnostics diagnostics) {
+        int errors = diagnostics.syntaxErrors();
+        Metrics.Span tokenizing = Metrics.global.begin(Metrics.Phase.TOKENIZE);
+        List<Token> tokens = new Tokenizer(source, 1, diagnostics).tokenize();
+        if (tokenizing != null) tokenizing.end(tokens.size());
+
+        Metrics.Span parsing = Metrics.global.begin(Metrics.Phase.PARSE);
+        Node root = new Parser(tokens, diagnostics).recovering().parse();
+        if (parsing != null) parsing.end(root != null ? Node.count(root) : 0);
+        if (diagnostics.syntaxErrors() > errors) return null;
+
+        if (optimize) root = new Optimizer().optimize(root);
+        return new CompiledExpression(source, engine, root);
+    }
+
+    // Opens a source that will be edited in place, and compiles it. Its syntax errors are added to the
+    // diagnostics, and Document.compiled() is null until an edit fixes them.
+    public Document open(String source, Diagnostics diagnostics) {
+        return new Document(engine, optimize, source, diagnostics);
+    }
+
+    // Starts collecting Metrics for every engine in this JVM and publishes them as an MXBean, under
+    // com.craftinginterpreters.lox:type=Metrics.
+    public static void registerMetrics() {
+        Metrics.global.registerMBean();
+    }
+}
@@ -0,0 +1,85 @@
+package com.craftinginterpreters.lox;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+Evaluation server on a loopback TCP port. Clients send newline delimited expressions and get one line back
+for each: the result as the prompt prints it, or its errors separated by "; ". Every connection is served
+on its own thread with its own LineEvaluator, so nothing is shared with Lox's static state.
+ */
+public class LoxServer {
+    private final Lox.Engine engine;
+    private final ParseCache cache;
+    private final boolean recovering;
+    private final boolean iterative;
+    private final ExecutorService connections = connectionExecutor();
+
+    LoxServer(Lox.Engine engine, ParseCache cache, boolean recovering, boolean iterative) {
+        this.engine = engine;
+        this.cache = cache;
+        this.recovering = recovering;
+        this.iterative = iterative;
+    }
+
+    void serve(int port) throws IOException {
+        try (ServerSocket server = new ServerSocket(port, 0, InetAddress.getLoopbackAddress())) {
+            System.out.printf("Listening on %s:%d%n", server.getInetAddress().getHostAddress(), server.getLocalPort());
+            System.out.flush();
+            while (true) {
+                Socket socket = server.accept();
+                connections.execute(() -> handle(socket));
+            }
+        } finally {
+            connections.shutdown();
+        }
+    }
+
+    private void handle(Socket socket) {
+        LineEvaluator evaluator = new LineEvaluator(engine, cache, recovering, iterative);
+        try (socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            int line = 1;
+            String request;
+            while ((request = in.readLine()) != null) {
+                out.write(respond(evaluator, request, line++));
+                out.write('\n');
+                // Only flush once the client has no more pipelined requests waiting.
+                if (!in.ready()) out.flush();
+            }
+        } catch (IOException error) {
+            // The client went away, nothing left to answer.
+        }
+    }
+
+    // Whatever goes wrong evaluating a request is that request's error response, the connection and the
+    // requests pipelined behind it carry on.
+    private static String respond(LineEvaluator evaluator, String request, int line) {
+        try {
+            LineEvaluator.Result result = evaluator.evaluate(request, line);
+            return result.value != null ? result.value : String.join("; ", result.errors);
+        } catch (RuntimeException error) {
+            return String.format("[line %d]: %s", line, error.getMessage());
+        }
+    }
+
+    // One virtual thread per connection where the runtime has them, otherwise a pooled platform thread.
+    private static ExecutorService connectionExecutor() {
+        try {
+            return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException error) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+}
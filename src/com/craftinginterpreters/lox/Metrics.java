@@ -0,0 +1,195 @@
+package com.craftinginterpreters.lox;
+
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/*
+Process wide wall time, allocation and item counts of every phase, safe to record from any thread. Nothing
+is measured until collection is enabled, so the phases only pay for a null check otherwise. Once enabled,
+every phase is also committed as a PhaseEvent to JFR recordings that have it turned on.
+ */
+class Metrics implements MetricsMXBean {
+    enum Phase { TOKENIZE, PARSE, PRINT, EVALUATE }
+
+    static final Metrics global = new Metrics();
+
+    private static final int BUCKETS = 32;
+
+    private volatile boolean enabled = false;
+    private final Map<Phase, Statistics> statistics = new EnumMap<>(Phase.class);
+
+    private static class Statistics {
+        final LongAdder calls = new LongAdder(), nanos = new LongAdder(), bytes = new LongAdder(), items = new LongAdder();
+        final AtomicLong maxNanos = new AtomicLong();
+        final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+        void record(long elapsed, long allocated, long count) {
+            calls.increment();
+            nanos.add(elapsed);
+            bytes.add(allocated);
+            items.add(count);
+            maxNanos.accumulateAndGet(elapsed, Math::max);
+            histogram.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(elapsed / 1000)));
+        }
+
+        void reset() {
+            calls.reset();
+            nanos.reset();
+            bytes.reset();
+            items.reset();
+            maxNanos.set(0);
+            for (int i = 0; i < BUCKETS; i++) histogram.set(i, 0);
+        }
+    }
+
+    // One measured phase, from Metrics.begin until end.
+    final class Span {
+        private final Phase phase;
+        private final long startNanos, startBytes;
+        private final PhaseEvent event;
+
+        private Span(Phase phase, PhaseEvent event) {
+            this.phase = phase;
+            this.event = event;
+            if (event != null) event.begin();
+            this.startBytes = allocatedBytes();
+            this.startNanos = System.nanoTime();
+        }
+
+        void end(long items) {
+            long elapsed = System.nanoTime() - startNanos;
+            long allocated = allocatedBytes() - startBytes;
+            statistics.get(phase).record(elapsed, allocated, items);
+            if (event != null) {
+                event.end();
+                event.phase = phase.name().toLowerCase(Locale.ROOT);
+                event.items = items;
+                event.allocated = allocated;
+                event.commit();
+            }
+        }
+    }
+
+    private Metrics() {
+        for (Phase phase : Phase.values()) statistics.put(phase, new Statistics());
+    }
+
+    void enable() {
+        enabled = true;
+    }
+
+    // Returns null when nothing would be recorded, callers end the span only when they got one.
+    Span begin(Phase phase) {
+        if (!enabled) return null;
+        return new Span(phase, Lazy.phaseEvents.isEnabled() ? new PhaseEvent() : null);
+    }
+
+    void registerMBean() {
+        enable();
+        try {
+            ObjectName name = new ObjectName("com.craftinginterpreters.lox:type=Metrics");
+            if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+            }
+        } catch (JMException error) {
+            throw new IllegalStateException("Cannot register the metrics MBean", error);
+        }
+    }
+
+    String summary() {
+        StringBuilder summary = new StringBuilder(String.format("%-10s %10s %12s %12s %12s %14s %12s%n",
+                "phase", "calls", "total ms", "mean us", "max us", "allocated", "items"));
+        for (Map.Entry<Phase, Statistics> entry : statistics.entrySet()) {
+            Statistics phase = entry.getValue();
+            long calls = phase.calls.sum();
+            summary.append(String.format("%-10s %10d %12.3f %12.3f %12.3f %14d %12d%n",
+                    entry.getKey().name().toLowerCase(Locale.ROOT), calls, phase.nanos.sum() / 1e6,
+                    calls == 0 ? 0.0 : phase.nanos.sum() / 1e3 / calls, phase.maxNanos.get() / 1e3,
+                    phase.bytes.sum(), phase.items.sum()));
+        }
+        return summary.toString();
+    }
+
+    /*
+    MetricsMXBean
+    */
+    @Override
+    public Map<String, Long> getCalls() {
+        return byPhase(phase -> phase.calls.sum());
+    }
+
+    @Override
+    public Map<String, Long> getTotalNanos() {
+        return byPhase(phase -> phase.nanos.sum());
+    }
+
+    @Override
+    public Map<String, Long> getMaxNanos() {
+        return byPhase(phase -> phase.maxNanos.get());
+    }
+
+    @Override
+    public Map<String, Long> getAllocatedBytes() {
+        return byPhase(phase -> phase.bytes.sum());
+    }
+
+    @Override
+    public Map<String, Long> getItems() {
+        return byPhase(phase -> phase.items.sum());
+    }
+
+    @Override
+    public Map<String, long[]> getLatencyHistograms() {
+        Map<String, long[]> histograms = new LinkedHashMap<>();
+        for (Map.Entry<Phase, Statistics> entry : statistics.entrySet()) {
+            long[] counts = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) counts[i] = entry.getValue().histogram.get(i);
+            histograms.put(entry.getKey().name().toLowerCase(Locale.ROOT), counts);
+        }
+        return histograms;
+    }
+
+    @Override
+    public void reset() {
+        for (Statistics phase : statistics.values()) phase.reset();
+    }
+
+    private Map<String, Long> byPhase(ToLongFunction<Statistics> value) {
+        Map<String, Long> values = new LinkedHashMap<>();
+        for (Map.Entry<Phase, Statistics> entry : statistics.entrySet()) {
+            values.put(entry.getKey().name().toLowerCase(Locale.ROOT), value.applyAsLong(entry.getValue()));
+        }
+        return values;
+    }
+
+    // Per thread allocation counters, or null when the JVM does not keep them.
+    static com.sun.management.ThreadMXBean threads() {
+        return Lazy.threads;
+    }
+
+    private static long allocatedBytes() {
+        return Lazy.threads != null ? Lazy.threads.getCurrentThreadAllocatedBytes() : 0;
+    }
+
+    // Loaded with the first measured phase, starting JFR and the management classes takes a few hundred milliseconds.
+    private static class Lazy {
+        // Asked whether the event is enabled, which JFR changes as recordings start and stop.
+        static final PhaseEvent phaseEvents = new PhaseEvent();
+        static final com.sun.management.ThreadMXBean threads = threads();
+
+        private static com.sun.management.ThreadMXBean threads() {
+            if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) return null;
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+            return threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled() ? threads : null;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Map;
+
+/*
+Management view of Metrics, every map is keyed by phase name.
+ */
+public interface MetricsMXBean {
+    Map<String, Long> getCalls();
+
+    Map<String, Long> getTotalNanos();
+
+    Map<String, Long> getMaxNanos();
+
+    Map<String, Long> getAllocatedBytes();
+
+    Map<String, Long> getItems();
+
+    // Counts of calls by duration, bucket i holding those under 2^i microseconds.
+    Map<String, long[]> getLatencyHistograms();
+
+    void reset();
+}
@@ -1,8 +1,15 @@
 package com.craftinginterpreters.lox;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.List;
 
 abstract class Node {
+    // Set by NodeFactory.Interning while the tree is built, for nodes that appear more than once in it.
+    boolean shared = false;
+    // Set by NodeFactory.Measuring, the number of tokens the node was parsed from.
+    int width = 0;
+
     interface Visitor<R> {
         //R visit(Assign node);
         R visit(Binary node);
@@ -15,7 +22,7 @@ abstract class Node {
         //R visit(Super node);
         //R visit(This node);
         R visit(Unary node);
-        //R visit(Variable node);
+        R visit(Variable node);
     }
 
 //    static class Assign extends Node {
@@ -185,18 +192,38 @@ abstract class Node {
         final Node right;
     }
 
-//    static class Variable extends Node {
-//        Variable(Token name) {
-//            this.name = name;
-//        }
-//
-//        @Override
-//        <R> R accept(Visitor<R> visitor) {
-//            return visitor.visit(this);
-//        }
-//
-//        final Token name;
-//    }
+    static class Variable extends Node {
+        Variable(Token name) {
+            this.name = name;
+        }
+
+        @Override
+        <R> R accept(Visitor<R> visitor) {
+            return visitor.visit(this);
+        }
+
+        final Token name;
+    }
 
     abstract <R> R accept(Visitor<R> visitor);
+
+    static int count(Node root) {
+        // With an explicit stack, so trees too deep to recurse over can be counted too.
+        Deque<Node> pending = new ArrayDeque<>();
+        pending.push(root);
+        int count = 0;
+        while (!pending.isEmpty()) {
+            Node node = pending.pop();
+            count++;
+            if (node instanceof Binary) {
+                pending.push(((Binary)node).right);
+                pending.push(((Binary)node).left);
+            } else if (node instanceof Grouping) {
+                pending.push(((Grouping)node).expression);
+            } else if (node instanceof Unary) {
+                pending.push(((Unary)node).right);
+            }
+        }
+        return count;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,146 @@
+package com.craftinginterpreters.lox;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/*
+Creates the nodes the Parser builds. The interning factory hash-conses them: a structurally identical
+subtree is built once and shared, and shared Binary and Unary nodes are marked so that the Interpreter
+evaluates them only once per evaluation. Operators are compared by type and line, so sharing never
+changes the line a runtime error is reported on.
+ */
+class NodeFactory {
+    static final NodeFactory PLAIN = new NodeFactory();
+
+    Node binary(Node left, Token operator, Node right) {
+        return new Node.Binary(left, operator, right);
+    }
+
+    Node grouping(Node expression) {
+        return new Node.Grouping(expression);
+    }
+
+    Node literal(Object value) {
+        return new Node.Literal(value);
+    }
+
+    Node unary(Token operator, Node right) {
+        return new Node.Unary(operator, right);
+    }
+
+    Node variable(Token name) {
+        return new Node.Variable(name);
+    }
+
+    // Records the width in tokens of every node, for the IncrementalParser.
+    static class Measuring extends NodeFactory {
+        // Nodes built so far.
+        int built = 0;
+
+        @Override
+        Node binary(Node left, Token operator, Node right) {
+            return measured(super.binary(left, operator, right), left.width + 1 + right.width);
+        }
+
+        @Override
+        Node grouping(Node expression) {
+            return measured(super.grouping(expression), expression.width + 2);
+        }
+
+        @Override
+        Node literal(Object value) {
+            return measured(super.literal(value), 1);
+        }
+
+        @Override
+        Node unary(Token operator, Node right) {
+            return measured(super.unary(operator, right), 1 + right.width);
+        }
+
+        @Override
+        Node variable(Token name) {
+            return measured(super.variable(name), 1);
+        }
+
+        private Node measured(Node node, int width) {
+            node.width = width;
+            built++;
+            return node;
+        }
+    }
+
+    static class Interning extends NodeFactory {
+        private final Map<Key, Node> nodes = new HashMap<>();
+
+        @Override
+        Node binary(Node left, Token operator, Node right) {
+            Key key = new Key(Node.Binary.class, left, operator.type, right, operator.line);
+            return intern(key, () -> super.binary(left, operator, right), true);
+        }
+
+        @Override
+        Node grouping(Node expression) {
+            Key key = new Key(Node.Grouping.class, expression, null, null, 0);
+            return intern(key, () -> super.grouping(expression), false);
+        }
+
+        @Override
+        Node literal(Object value) {
+            Key key = new Key(Node.Literal.class, value, null, null, 0);
+            return intern(key, () -> super.literal(value), false);
+        }
+
+        @Override
+        Node unary(Token operator, Node right) {
+            Key key = new Key(Node.Unary.class, operator.type, right, null, operator.line);
+            return intern(key, () -> super.unary(operator, right), true);
+        }
+
+        @Override
+        Node variable(Token name) {
+            Key key = new Key(Node.Variable.class, name.lexeme, null, null, name.line);
+            return intern(key, () -> super.variable(name), false);
+        }
+
+        private Node intern(Key key, Supplier<Node> create, boolean memoize) {
+            Node existing = nodes.get(key);
+            if (existing != null) {
+                if (memoize) existing.shared = true;
+                return existing;
+            }
+            Node node = create.get();
+            nodes.put(key, node);
+            return node;
+        }
+    }
+
+    // Children are already interned, so they compare by identity.
+    private static final class Key {
+        Key(Class<?> kind, Object first, Object second, Object third, int line) {
+            this.kind = kind;
+            this.first = first;
+            this.second = second;
+            this.third = third;
+            this.line = line;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) return false;
+            Key key = (Key)other;
+            return kind == key.kind && line == key.line && Objects.equals(first, key.first)
+                    && Objects.equals(second, key.second) && Objects.equals(third, key.third);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(kind, first, second, third, line);
+        }
+
+        final Class<?> kind;
+        final Object first, second, third;
+        final int line;
+    }
+}
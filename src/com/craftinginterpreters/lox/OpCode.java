@@ -0,0 +1,36 @@
+package com.craftinginterpreters.lox;
+
+final class OpCode {
+    private OpCode() {}
+
+    // Push a value from the chunk's pools, operand is a 3 byte pool index.
+    static final byte NUMBER = 0;
+    static final byte CONSTANT = 1;
+
+    // Push a literal value.
+    static final byte NIL = 2;
+    static final byte TRUE = 3;
+    static final byte FALSE = 4;
+    static final byte POP = 5;
+
+    // Binary operators, one for each case of Interpreter.visit(Node.Binary).
+    static final byte EQUAL = 6;
+    static final byte NOT_EQUAL = 7;
+    static final byte GREATER = 8;
+    static final byte GREATER_EQUAL = 9;
+    static final byte LESS = 10;
+    static final byte LESS_EQUAL = 11;
+    static final byte ADD = 12;
+    static final byte SUBTRACT = 13;
+    static final byte MULTIPLY = 14;
+    static final byte DIVIDE = 15;
+
+    // Unary operators, one for each case of Interpreter.visit(Node.Unary).
+    static final byte NOT = 16;
+    static final byte NEGATE = 17;
+
+    static final byte RETURN = 18;
+
+    // Reads the variable named by the instruction's token. No variables are bound in the VM, so it fails.
+    static final byte VARIABLE = 19;
+}
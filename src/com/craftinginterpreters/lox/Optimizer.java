@@ -0,0 +1,284 @@
+package com.craftinginterpreters.lox;
+
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+import static com.craftinginterpreters.lox.TokenType.*;
+
+public class Optimizer {
+    enum Pass {
+        REMOVE_GROUPINGS("groupings"),
+        FOLD_CONSTANTS("fold"),
+        DOUBLE_NEGATION("negation"),
+        IDENTITIES("identities");
+
+        final String flag;
+
+        Pass(String flag) {
+            this.flag = flag;
+        }
+
+        static Pass fromFlag(String flag) {
+            for (Pass pass : values()) {
+                if (pass.flag.equals(flag)) return pass;
+            }
+            return null;
+        }
+    }
+
+    // Folding stops short of building string constants longer than this, e.g. for "x" * 100000000.
+    private static final int MAX_FOLDED_STRING_LENGTH = 1024;
+
+    private final Set<Pass> passes;
+    private final Map<Pass, Integer> removedNodes = new EnumMap<>(Pass.class);
+
+    Optimizer() {
+        this(EnumSet.allOf(Pass.class));
+    }
+
+    Optimizer(Set<Pass> passes) {
+        this.passes = passes;
+    }
+
+    Node optimize(Node root) {
+        removedNodes.clear();
+        for (Pass pass : Pass.values()) {
+            if (!passes.contains(pass)) continue;
+
+            int before = Node.count(root);
+            root = root.accept(rewriter(pass));
+            removedNodes.put(pass, before - Node.count(root));
+        }
+        return root;
+    }
+
+    Map<Pass, Integer> removedNodes() {
+        return removedNodes;
+    }
+
+    String report() {
+        StringBuilder report = new StringBuilder("Optimizer:");
+        for (Map.Entry<Pass, Integer> entry : removedNodes.entrySet()) {
+            report.append(String.format(" %s -%d", entry.getKey().flag, entry.getValue()));
+        }
+        return report.toString();
+    }
+
+    private Rewriter rewriter(Pass pass) {
+        return switch (pass) {
+            case REMOVE_GROUPINGS -> new RemoveGroupings();
+            case FOLD_CONSTANTS -> new FoldConstants();
+            case DOUBLE_NEGATION -> new DoubleNegation();
+            case IDENTITIES -> new Identities();
+        };
+    }
+
+    /*
+    Passes, each one a bottom up rewrite of the tree that only rebuilds nodes whose children changed
+    */
+    private static class Rewriter implements Node.Visitor<Node> {
+        @Override
+        public Node visit(Node.Binary node) {
+            Node left = node.left.accept(this);
+            Node right = node.right.accept(this);
+            if (left == node.left && right == node.right) return node;
+            return new Node.Binary(left, node.operator, right);
+        }
+
+        @Override
+        public Node visit(Node.Grouping node) {
+            Node expression = node.expression.accept(this);
+            if (expression == node.expression) return node;
+            return new Node.Grouping(expression);
+        }
+
+        @Override
+        public Node visit(Node.Literal node) {
+            return node;
+        }
+
+        @Override
+        public Node visit(Node.Unary node) {
+            Node right = node.right.accept(this);
+            if (right == node.right) return node;
+            return new Node.Unary(node.operator, right);
+        }
+
+        @Override
+        public Node visit(Node.Variable node) {
+            return node;
+        }
+    }
+
+    private static class RemoveGroupings extends Rewriter {
+        @Override
+        public Node visit(Node.Grouping node) {
+            return node.expression.accept(this);
+        }
+    }
+
+    private static class FoldConstants extends Rewriter {
+        @Override
+        public Node visit(Node.Binary node) {
+            Node rewritten = super.visit(node);
+            if (!(rewritten instanceof Node.Binary)) return rewritten;
+
+            Node.Binary binary = (Node.Binary)rewritten;
+            Node left = skipGroupings(binary.left), right = skipGroupings(binary.right);
+            if (!(left instanceof Node.Literal) || !(right instanceof Node.Literal)) return binary;
+
+            Object leftValue = ((Node.Literal)left).value, rightValue = ((Node.Literal)right).value;
+            if (binary.operator.type == STAR && !canFoldRepeat(leftValue, rightValue)) return binary;
+            try {
+                return fold(binary, Interpreter.binary(binary.operator, leftValue, rightValue));
+            } catch (RuntimeError error) {
+                // Leave it in place so the error is still reported when it is evaluated.
+                return binary;
+            }
+        }
+
+        @Override
+        public Node visit(Node.Unary node) {
+            Node rewritten = super.visit(node);
+            if (!(rewritten instanceof Node.Unary)) return rewritten;
+
+            Node.Unary unary = (Node.Unary)rewritten;
+            Node right = skipGroupings(unary.right);
+            if (!(right instanceof Node.Literal)) return unary;
+
+            try {
+                return fold(unary, Interpreter.unary(unary.operator, ((Node.Literal)right).value));
+            } catch (RuntimeError error) {
+                return unary;
+            }
+        }
+
+        private static Node fold(Node node, Object value) {
+            if (Interpreter.isString(value)) {
+                if (Rope.length(value) > MAX_FOLDED_STRING_LENGTH) return node;
+                value = value.toString();
+            }
+            return new Node.Literal(value);
+        }
+
+        private static boolean canFoldRepeat(Object left, Object right) {
+            String base;
+            Object count;
+            if (left instanceof String && (right instanceof Double || right instanceof Boolean)) {
+                base = (String)left;
+                count = right;
+            } else if (right instanceof String && (left instanceof Double || left instanceof Boolean)) {
+                base = (String)right;
+                count = left;
+            } else {
+                return true;
+            }
+
+            int repeat = count instanceof Boolean ? ((boolean)count ? 1 : 0) : (int)(double)count;
+            // A negative count fails outside of RuntimeError, keep that failure at evaluation time too.
+            return repeat >= 0 && (long)base.length() * repeat <= MAX_FOLDED_STRING_LENGTH;
+        }
+    }
+
+    private static class DoubleNegation extends Rewriter {
+        @Override
+        public Node visit(Node.Unary node) {
+            Node rewritten = super.visit(node);
+            if (!(rewritten instanceof Node.Unary)) return rewritten;
+
+            Node.Unary unary = (Node.Unary)rewritten;
+            Node inner = skipGroupings(unary.right);
+            if (!(inner instanceof Node.Unary)) return unary;
+
+            Node.Unary innerUnary = (Node.Unary)inner;
+            if (unary.operator.type != innerUnary.operator.type) return unary;
+
+            // !!x and --x are only x itself when x already has the type the operator converts to.
+            Node operand = innerUnary.right;
+            if (unary.operator.type == BANG && isBoolean(operand)) return operand;
+            if (unary.operator.type == MINUS && isNumber(operand)) return operand;
+            return unary;
+        }
+    }
+
+    private static class Identities extends Rewriter {
+        @Override
+        public Node visit(Node.Binary node) {
+            Node rewritten = super.visit(node);
+            if (!(rewritten instanceof Node.Binary)) return rewritten;
+
+            Node.Binary binary = (Node.Binary)rewritten;
+            // x + 0 is left alone since -0 + 0 is 0.
+            switch (binary.operator.type) {
+                case STAR:
+                    if (isNumberLiteral(binary.right, 1) && isNumber(binary.left)) return binary.left;
+                    if (isNumberLiteral(binary.left, 1) && isNumber(binary.right)) return binary.right;
+                    break;
+                case SLASH:
+                    if (isNumberLiteral(binary.right, 1) && isNumber(binary.left)) return binary.left;
+                    break;
+                case MINUS:
+                    if (isNumberLiteral(binary.right, 0) && isNumber(binary.left)) return binary.left;
+                    break;
+            }
+            return binary;
+        }
+
+        private static boolean isNumberLiteral(Node node, double value) {
+            node = skipGroupings(node);
+            if (!(node instanceof Node.Literal)) return false;
+            Object literal = ((Node.Literal)node).value;
+            return literal instanceof Double && (double)literal == value;
+        }
+    }
+
+    /*
+    Static type information, true only when evaluating the node can never yield any other type
+    */
+    private static boolean isNumber(Node node) {
+        node = skipGroupings(node);
+        if (node instanceof Node.Literal) return ((Node.Literal)node).value instanceof Double;
+        if (node instanceof Node.Unary) return ((Node.Unary)node).operator.type == MINUS;
+        if (node instanceof Node.Binary) {
+            Node.Binary binary = (Node.Binary)node;
+            switch (binary.operator.type) {
+                case MINUS:
+                case SLASH:
+                    return true;
+                case PLUS:
+                case STAR:
+                    return isNumeric(binary.left) && isNumeric(binary.right);
+            }
+        }
+        return false;
+    }
+
+    private static boolean isBoolean(Node node) {
+        node = skipGroupings(node);
+        if (node instanceof Node.Literal) return ((Node.Literal)node).value instanceof Boolean;
+        if (node instanceof Node.Unary) return ((Node.Unary)node).operator.type == BANG;
+        if (node instanceof Node.Binary) {
+            switch (((Node.Binary)node).operator.type) {
+                case EQUAL_EQUAL:
+                case BANG_EQUAL:
+                case GREATER:
+                case GREATER_EQUAL:
+                case LESS:
+                case LESS_EQUAL:
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isNumeric(Node node) {
+        return isNumber(node) || isBoolean(node);
+    }
+
+    private static Node skipGroupings(Node node) {
+        while (node instanceof Node.Grouping) node = ((Node.Grouping)node).expression;
+        return node;
+    }
+}
@@ -0,0 +1,131 @@
+package com.craftinginterpreters.lox;
+
+import java.io.PrintStream;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/*
+Everything the interpreter prints, collected in one reused buffer and written out once it holds
+FLUSH_SIZE characters, or at most FLUSH_INTERVAL after it was printed, by a timer on the writer thread
+when nothing else comes along to flush it. When the output is asynchronous the filled buffer is handed
+to the writer thread, and written in order while evaluation goes on. The timer hands the buffer off the
+same way, behind every write handed off before it, and any hand-off cancels a pending timer. One thread
+prints to an Output at a time, the timer is synchronized with it.
+ */
+class Output implements Appendable {
+    private static final int FLUSH_SIZE = 1 << 16;
+    private static final long FLUSH_INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final String RED = "\u001B[31m", RESET = "\u001B[0m";
+    private static final String lineSeparator = System.lineSeparator();
+
+    private final PrintStream sink;
+    private final boolean plain;
+    private final boolean async;
+    // Runs the timed flushes, and the writes when async. Its thread is only started by the first of them.
+    private final ScheduledThreadPoolExecutor writer;
+    private final StringBuilder buffer = new StringBuilder(FLUSH_SIZE + 1024);
+    private ScheduledFuture<?> timer = null;
+
+    Output(PrintStream sink, boolean plain, boolean async) {
+        this.sink = sink;
+        this.plain = plain;
+        this.async = async;
+        this.writer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "lox-output");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        writer.setRemoveOnCancelPolicy(true);
+    }
+
+    @Override
+    public synchronized Output append(CharSequence text) {
+        buffer.append(text);
+        written();
+        return this;
+    }
+
+    @Override
+    public synchronized Output append(CharSequence text, int start, int end) {
+        buffer.append(text, start, end);
+        written();
+        return this;
+    }
+
+    @Override
+    public synchronized Output append(char c) {
+        buffer.append(c);
+        written();
+        return this;
+    }
+
+    synchronized Output println(CharSequence text) {
+        buffer.append(text).append(lineSeparator);
+        written();
+        return this;
+    }
+
+    // Error text, red unless the output is plain.
+    synchronized Output error(CharSequence text) {
+        if (plain) return append(text);
+        buffer.append(RED).append(text).append(RESET);
+        written();
+        return this;
+    }
+
+    // Writes out everything buffered so far, and waits until it is written.
+    void flush() {
+        synchronized (this) {
+            handOff();
+        }
+        if (!async) return;
+        try {
+            writer.submit(() -> {}).get();
+        } catch (InterruptedException error) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException error) {
+            throw new IllegalStateException("Output writer failed", error.getCause());
+        }
+    }
+
+    void close() {
+        flush();
+        writer.shutdown();
+    }
+
+    private void written() {
+        if (buffer.length() >= FLUSH_SIZE) {
+            handOff();
+        } else if (timer == null) {
+            timer = writer.schedule(this::timedFlush, FLUSH_INTERVAL, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private synchronized void timedFlush() {
+        timer = null;
+        handOff();
+    }
+
+    private void handOff() {
+        if (timer != null) {
+            timer.cancel(false);
+            timer = null;
+        }
+        if (buffer.length() == 0) return;
+
+        if (!async) {
+            sink.append(buffer);
+            sink.flush();
+        } else {
+            String text = buffer.toString();
+            writer.execute(() -> {
+                sink.append(text);
+                sink.flush();
+            });
+        }
+        buffer.setLength(0);
+    }
+}
@@ -0,0 +1,108 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+Bounded LRU cache from source text to the tree it parses into, for sources that parsed without errors.
+Trees are never modified after parsing, so a cached tree can be handed to any number of threads. An entry
+also keeps what the engine compiled its tree into, so a source seen again is not compiled again.
+ */
+class ParseCache {
+    // Rough heap footprint of one node with its operator token, used for the byte budget.
+    private static final int NODE_BYTES = 64;
+    private static final int ENTRY_BYTES = 96;
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes = 0;
+    private long hits = 0, misses = 0, evictions = 0;
+
+    static class Entry {
+        Entry(Node root, long bytes) {
+            this.root = root;
+            this.bytes = bytes;
+        }
+
+        // The compiled forms of `tree`, which is the entry's tree or the same rewrite of it on every call,
+        // built on first use. Two threads may both build one, either result is as good.
+        Chunk chunk(Node tree) {
+            Chunk compiled = chunk;
+            if (compiled == null) chunk = compiled = new Compiler().compile(tree);
+            return compiled;
+        }
+
+        JitCompiler.Code code(Node tree) {
+            JitCompiler.Code compiled = code;
+            if (compiled == null) code = compiled = new JitCompiler().compile(tree);
+            return compiled;
+        }
+
+        // One per thread, a self-specializing tree rewrites itself as it runs.
+        SpecializedNode.Root specialized(Node tree) {
+            ThreadLocal<SpecializedNode.Root> compiled = specialized;
+            if (compiled == null) specialized = compiled = ThreadLocal.withInitial(() -> new Specializer().specialize(tree));
+            return compiled.get();
+        }
+
+        final Node root;
+        final long bytes;
+        private volatile Chunk chunk;
+        private volatile JitCompiler.Code code;
+        private volatile ThreadLocal<SpecializedNode.Root> specialized;
+    }
+
+    ParseCache(int maxEntries, long maxBytes) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    synchronized Entry get(String source) {
+        Entry entry = entries.get(source);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry;
+    }
+
+    // Returns the new entry, or null when the tree is too large to keep.
+    synchronized Entry put(String source, Node root) {
+        long size = ENTRY_BYTES + 2L * source.length() + NODE_BYTES * (long)Node.count(root);
+        if (size > maxBytes) return null;
+
+        Entry entry = new Entry(root, size);
+        Entry previous = entries.put(source, entry);
+        if (previous != null) bytes -= previous.bytes;
+        bytes += size;
+
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while (entries.size() > maxEntries || bytes > maxBytes) {
+            bytes -= eldest.next().getValue().bytes;
+            eldest.remove();
+            evictions++;
+        }
+        return entry;
+    }
+
+    synchronized long hits() {
+        return hits;
+    }
+
+    synchronized long misses() {
+        return misses;
+    }
+
+    synchronized long evictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("Parse cache: %d entries, %d bytes, %d hits, %d misses, %d evictions",
+                entries.size(), bytes, hits, misses, evictions);
+    }
+}
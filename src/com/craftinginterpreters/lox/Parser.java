@@ -1,22 +1,69 @@
 package com.craftinginterpreters.lox;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.EnumSet;
+import java.util.Iterator;
 import java.util.List;
 
 import static com.craftinginterpreters.lox.TokenType.*;
 
 public class Parser {
-    private static class ParseError extends RuntimeException {};
+    private static class ParseError extends RuntimeException {
+        ParseError() {
+            super(null, null, false, false);
+        }
+    };
     private static final EnumSet<TokenType> StatementBeginToken = EnumSet.of(CLASS, FUN, VAR, FOR, IF, WHILE, PRINT, RETURN);
 
-    private final List<Token> tokens;
-    private int current = 0;
+    private final TokenCursor tokens;
+    private final ErrorReporter reporter;
+    private NodeFactory nodes = NodeFactory.PLAIN;
+    private boolean recovering = false;
+    private boolean iterative = false;
 
     Parser(List<Token> tokens) {
+        this(tokens, Lox.console);
+    }
+
+    Parser(List<Token> tokens, ErrorReporter reporter) {
+        this(TokenCursor.of(tokens.iterator()), reporter);
+    }
+
+    Parser(Iterator<Token> tokens) {
+        this(TokenCursor.of(tokens), Lox.console);
+    }
+
+    Parser(TokenBuffer tokens) {
+        this(TokenCursor.of(tokens), Lox.console);
+    }
+
+    private Parser(TokenCursor tokens, ErrorReporter reporter) {
         this.tokens = tokens;
+        this.reporter = reporter;
+    }
+
+    Parser useNodeFactory(NodeFactory nodes) {
+        this.nodes = nodes;
+        return this;
+    }
+
+    // Reports every syntax error in one pass. The same inputs are accepted as without recovering: the first
+    // expression, with whatever follows it left unread. Only once that fails is the rest of the input parsed,
+    // as expressions separated by ';', recovering after each error.
+    Parser recovering() {
+        this.recovering = true;
+        return this;
+    }
+
+    // Parses with explicit stacks instead of recursion, so nesting depth is bounded by the heap.
+    Parser iterative() {
+        this.iterative = true;
+        return this;
     }
 
     Node parse() {
+        if (recovering) return parseRecovering();
         try {
             return expression();
         } catch (ParseError error) {
@@ -24,43 +71,58 @@ public class Parser {
         }
     }
 
+    private Node parseRecovering() {
+        try {
+            return expression();
+        } catch (ParseError error) {
+            synchronize();
+        }
+
+        while (!isAtEnd()) {
+            try {
+                expression();
+                // Like after the first expression, the tokens up to the next ';' are not looked at.
+                while (!isAtEnd() && !match(SEMICOLON)) advance();
+            } catch (ParseError error) {
+                synchronize();
+            }
+        }
+        return null;
+    }
+
     /*
     Helper functions
     */
     private boolean isAtEnd() {
-        return peek().type == EOF;
+        return tokens.peekType() == EOF;
     }
 
     private Token peek() {
-        return tokens.get(current);
+        return tokens.peek();
     }
 
     private Token previous() {
-        return tokens.get(current - 1);
+        return tokens.previous();
     }
 
     private boolean isType(TokenType tokenType) {
         if (isAtEnd()) return false;
-        return peek().type == tokenType;
+        return tokens.peekType() == tokenType;
     }
 
-    private Token advance() {
-        if (!isAtEnd()) current++;
-        return previous();
+    private void advance() {
+        if (!isAtEnd()) tokens.advance();
     }
 
-    private boolean matches(TokenType... tokenTypes) {
-        for (TokenType type: tokenTypes) {
-            if (isType(type)) {
-                advance();
-                return true;
-            }
-        }
-        return false;
+    private boolean match(TokenType tokenType) {
+        if (!isType(tokenType)) return false;
+        advance();
+        return true;
     }
 
     /*
-    Recursive descent parsing implementing the following grammars,
+    Pratt parsing of the following grammar, every token type has a prefix rule, a binding power as an infix
+    operator, or neither. All infix operators are binary and left associative.
 
     expression     → equality ;
     equality       → comparison ( ( "!=" | "==" ) comparison )* ;
@@ -69,99 +131,163 @@ public class Parser {
     factor         → unary ( ( "/" | "*" ) unary )* ;
     unary          → ( "!" | "-" ) unary
                    | primary ;
-    primary        → NUMBER | STRING | "true" | "false" | "nil"
+    primary        → NUMBER | STRING | "true" | "false" | "nil" | IDENTIFIER
                    | "(" expression ")" ;
      */
-    private Node expression() {
-        return equality();
+    private interface PrefixRule {
+        // Called with the token that starts the expression already consumed.
+        Node parse(Parser parser);
     }
 
-    private Node equality() {
-        Node left = comparison();
-
-        while (matches(EQUAL_EQUAL, BANG_EQUAL)) {
-            Token operator = previous();
-            Node right = comparison();
-            left = new Node.Binary(left, operator, right);
+    static final int EQUALITY = 1, COMPARISON = 2, TERM = 3, FACTOR = 4, PREFIX = 5;
+    private static final PrefixRule OPERAND = Parser::operand;
+    private static final PrefixRule[] prefixRules = new PrefixRule[TokenType.values().length];
+    private static final int[] bindingPowers = new int[TokenType.values().length];
+    static {
+        for (TokenType type : new TokenType[] { FALSE, TRUE, NIL, NUMBER, STRING, IDENTIFIER }) {
+            prefixRules[type.ordinal()] = OPERAND;
         }
-
-        return left;
+        prefixRules[BANG.ordinal()] = Parser::unary;
+        prefixRules[MINUS.ordinal()] = Parser::unary;
+        prefixRules[LEFT_PAREN.ordinal()] = Parser::grouping;
+
+        setBindingPower(EQUALITY, EQUAL_EQUAL, BANG_EQUAL);
+        setBindingPower(COMPARISON, GREATER, GREATER_EQUAL, LESS, LESS_EQUAL);
+        setBindingPower(TERM, PLUS, MINUS);
+        setBindingPower(FACTOR, SLASH, STAR);
     }
 
-    private Node comparison() {
-        Node left = term();
+    private static void setBindingPower(int power, TokenType... types) {
+        for (TokenType type : types) bindingPowers[type.ordinal()] = power;
+    }
 
-        while (matches(GREATER, GREATER_EQUAL, LESS, LESS_EQUAL)) {
-            Token operator = previous();
-            Node right = term();
-            left = new Node.Binary(left, operator, right);
-        }
+    // How tightly the token binds as an infix operator, 0 for tokens that are not one.
+    static int bindingPower(TokenType type) {
+        return bindingPowers[type.ordinal()];
+    }
 
-        return left;
+    private Node expression() {
+        return iterative ? iterativeExpression() : expression(0);
     }
 
-    private Node term() {
-        Node left = factor();
+    // Parses an expression whose operators all bind tighter than `power`.
+    private Node expression(int power) {
+        PrefixRule prefix = prefixRules[tokens.peekType().ordinal()];
+        if (prefix == null) throw createParseError(peek(), "Does not start valid expression or statement.");
+        advance();
+        Node left = prefix.parse(this);
 
-        while (matches(PLUS, MINUS)) {
+        while (bindingPowers[tokens.peekType().ordinal()] > power) {
+            advance();
             Token operator = previous();
-            Node right = factor();
-            left = new Node.Binary(left, operator, right);
+            Node right = expression(bindingPowers[operator.type.ordinal()]);
+            left = nodes.binary(left, operator, right);
         }
 
         return left;
     }
 
-    private Node factor() {
-        Node left = unary();
+    private Node unary() {
+        Token operator = previous();
+        Node right = expression(PREFIX);
+        return nodes.unary(operator, right);
+    }
 
-        while (matches(SLASH, STAR)) {
-            Token operator = previous();
-            Node right = unary();
-            left = new Node.Binary(left, operator, right);
-        }
+    private Node grouping() {
+        Node node = expression(0);
+        consume(RIGHT_PAREN, "Expect ')' after (<Expression>");
+        return nodes.grouping(node);
+    }
 
-        return left;
+    // A literal or a variable.
+    private Node operand() {
+        return switch (tokens.previousType()) {
+            case FALSE -> nodes.literal(false);
+            case TRUE -> nodes.literal(true);
+            case NIL -> nodes.literal(null);
+            case IDENTIFIER -> nodes.variable(previous());
+            default -> nodes.literal(tokens.previousLiteral());
+        };
     }
 
-    private Node unary() {
-        if (matches(BANG, MINUS)) {
-            Token operator = previous();
-            Node right = unary();
-            return new Node.Unary(operator, right);
+    /*
+    The same grammar and binding powers with explicit stacks. Nodes are built in the same order and errors
+    are reported on the same tokens as by the Pratt parser above.
+     */
+    private static final byte UNARY = 0, BINARY = 1, GROUP = 2;
+
+    private static class Pending {
+        Pending(Token operator, byte kind) {
+            this.operator = operator;
+            this.kind = kind;
         }
 
-        return primary();
+        final Token operator;
+        final byte kind;
     }
 
-    private Node primary() {
-        if (matches(FALSE)) return new Node.Literal(false);
-        if (matches(TRUE)) return new Node.Literal(true);
-        if (matches(NIL)) return new Node.Literal(null);
-
-        if (matches(NUMBER, STRING)) {
-            return new Node.Literal(previous().literal);
+    private Node iterativeExpression() {
+        Deque<Node> operands = new ArrayDeque<>();
+        Deque<Pending> pending = new ArrayDeque<>();
+        while (true) {
+            // Prefix operators and opened groupings in front of the next operand.
+            PrefixRule prefix;
+            while ((prefix = prefixRules[tokens.peekType().ordinal()]) != OPERAND) {
+                if (prefix == null) throw createParseError(peek(), "Does not start valid expression or statement.");
+                advance();
+                pending.push(new Pending(previous(), tokens.previousType() == LEFT_PAREN ? GROUP : UNARY));
+            }
+            advance();
+            operands.push(operand());
+
+            while (true) {
+                while (!pending.isEmpty() && pending.peek().kind == UNARY) {
+                    operands.push(nodes.unary(pending.pop().operator, operands.pop()));
+                }
+
+                int power = bindingPowers[tokens.peekType().ordinal()];
+                if (power > 0) {
+                    reduce(operands, pending, power);
+                    advance();
+                    pending.push(new Pending(previous(), BINARY));
+                    break;
+                }
+
+                reduce(operands, pending, 1);
+                if (pending.isEmpty()) return operands.pop();
+
+                // Only an open grouping is left on top, the finished operand is its expression.
+                consume(RIGHT_PAREN, "Expect ')' after (<Expression>");
+                pending.pop();
+                operands.push(nodes.grouping(operands.pop()));
+            }
         }
+    }
 
-        if (matches(LEFT_PAREN)) {
-            Node node = expression();
-            consume(RIGHT_PAREN, "Expect ')' after (<Expression>");
-            return new Node.Grouping(node);
+    // Builds the pending binary operators binding at least as tight as `power`.
+    private void reduce(Deque<Node> operands, Deque<Pending> pending, int power) {
+        while (!pending.isEmpty() && pending.peek().kind == BINARY
+                && bindingPowers[pending.peek().operator.type.ordinal()] >= power) {
+            Token operator = pending.pop().operator;
+            Node right = operands.pop();
+            Node left = operands.pop();
+            operands.push(nodes.binary(left, operator, right));
         }
-
-        throw createParseError(peek(), "Does not start valid expression or statement.");
     }
 
     /*
     Error handling and recovery
     */
-    private Token consume(TokenType tokenType, String message) {
-        if (isType(tokenType)) return advance();
+    private void consume(TokenType tokenType, String message) {
+        if (isType(tokenType)) {
+            advance();
+            return;
+        }
         throw createParseError(peek(), message);
     }
 
     private ParseError createParseError(Token token, String message) {
-        Lox.error(token, message);
+        reporter.error(token, message);
         return new ParseError();
     }
 
@@ -170,8 +296,8 @@ public class Parser {
         advance();
 
         while (!isAtEnd()) {
-            if (previous().type == SEMICOLON) return;
-            if (StatementBeginToken.contains(peek().type)) return;
+            if (tokens.previousType() == SEMICOLON) return;
+            if (StatementBeginToken.contains(tokens.peekType())) return;
 
             advance();
         }
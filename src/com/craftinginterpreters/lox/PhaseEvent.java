@@ -0,0 +1,27 @@
+package com.craftinginterpreters.lox;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.craftinginterpreters.lox.Phase")
+@Label("Lox Phase")
+@Category("Lox")
+@Description("One tokenize, parse, print or evaluate step, recorded by Metrics")
+@StackTrace(false)
+class PhaseEvent extends Event {
+    @Label("Phase")
+    String phase;
+
+    @Label("Items")
+    @Description("Tokens, tree nodes, printed characters or evaluated nodes, depending on the phase")
+    long items;
+
+    @Label("Allocated")
+    @DataAmount
+    long allocated;
+}
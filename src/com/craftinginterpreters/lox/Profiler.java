@@ -0,0 +1,174 @@
+package com.craftinginterpreters.lox;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+Sampling profiler for the tree-walking Interpreter. The interpreter keeps a shadow stack of the Binary and
+Unary nodes it is inside of, and a sampler thread looks at that stack every interval. Each sample, and the
+bytes the interpreter thread allocated since the previous one, goes to the operator on top of the stack
+(self) and to every operator below it (total). Samples are racy by design, the interpreter never waits on
+the sampler.
+ */
+class Profiler {
+    private static final long INTERVAL = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final Thread target;
+    private final com.sun.management.ThreadMXBean threads = Metrics.threads();
+    private final Thread sampler = new Thread(this::sample, "lox-profiler");
+    private volatile boolean running = false;
+
+    // Shadow stack, written by the interpreter thread only.
+    private volatile Node[] stack = new Node[64];
+    private volatile int depth = 0;
+
+    // Sampler thread state, read once it has stopped.
+    private final Map<String, Frame> frames = new HashMap<>();
+    private final Map<String, long[]> stacks = new HashMap<>();
+    private long samples = 0;
+    private long lastAllocated;
+
+    private static class Frame {
+        Frame(String name) {
+            this.name = name;
+        }
+
+        final String name;
+        long self, total, allocated;
+        // The last sample counted in total, so recursion through the same operator counts once.
+        long sampled = -1;
+    }
+
+    Profiler(Thread target) {
+        this.target = target;
+        sampler.setDaemon(true);
+    }
+
+    void start() {
+        lastAllocated = allocated();
+        running = true;
+        sampler.start();
+    }
+
+    void stop() {
+        running = false;
+        try {
+            sampler.join();
+        } catch (InterruptedException error) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /*
+    Shadow stack, called by the interpreter
+    */
+    void enter(Node node) {
+        Node[] nodes = stack;
+        int top = depth;
+        if (top == nodes.length) {
+            nodes = Arrays.copyOf(nodes, top * 2);
+            stack = nodes;
+        }
+        nodes[top] = node;
+        depth = top + 1;
+    }
+
+    void exit() {
+        depth--;
+    }
+
+    // After an evaluation ends, a runtime error may have left nodes on the stack.
+    void clear() {
+        depth = 0;
+    }
+
+    /*
+    Sampling
+    */
+    private void sample() {
+        StringBuilder key = new StringBuilder();
+        while (running) {
+            LockSupport.parkNanos(INTERVAL);
+
+            long allocated = allocated();
+            long bytes = allocated - lastAllocated;
+            lastAllocated = allocated;
+
+            Node[] nodes = stack;
+            int top = Math.min(depth, nodes.length);
+            if (top == 0) continue;
+
+            samples++;
+            key.setLength(0);
+            key.append("lox");
+            Frame frame = null;
+            for (int i = 0; i < top; i++) {
+                Node node = nodes[i];
+                if (node == null) continue;
+                String name = frameName(node);
+                key.append(';').append(name);
+                frame = frames.computeIfAbsent(name, Frame::new);
+                if (frame.sampled != samples) {
+                    frame.sampled = samples;
+                    frame.total++;
+                }
+            }
+            if (frame == null) continue;
+            frame.self++;
+            frame.allocated += bytes;
+
+            long[] counts = stacks.computeIfAbsent(key.toString(), ignored -> new long[1]);
+            counts[0]++;
+        }
+    }
+
+    private static String frameName(Node node) {
+        Token operator = node instanceof Node.Binary ? ((Node.Binary)node).operator : ((Node.Unary)node).operator;
+        return String.format("line %d %s %s", operator.line, node instanceof Node.Binary ? "binary" : "unary", operator.lexeme);
+    }
+
+    /*
+    Results
+    */
+    void report(PrintStream out) {
+        List<Frame> ranked = new ArrayList<>(frames.values());
+        ranked.sort((a, b) -> a.self != b.self ? Long.compare(b.self, a.self) : Long.compare(b.total, a.total));
+
+        out.printf("Profile: %d samples every %d us%n", samples, TimeUnit.NANOSECONDS.toMicros(INTERVAL));
+        out.printf("%8s %8s %14s  %s%n", "self %", "total %", "allocated", "operator");
+        for (Frame frame : ranked) {
+            out.printf("%8.1f %8.1f %14d  %s%n", percent(frame.self), percent(frame.total), frame.allocated, frame.name);
+        }
+    }
+
+    // One line per distinct stack with its sample count, the input format of flamegraph.pl and speedscope.
+    void writeCollapsedStacks(Path path) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, long[]> entry : stacks.entrySet()) {
+                writer.write(entry.getKey());
+                writer.write(' ');
+                writer.write(Long.toString(entry.getValue()[0]));
+                writer.write('\n');
+            }
+        }
+    }
+
+    private double percent(long count) {
+        return samples == 0 ? 0 : 100.0 * count / samples;
+    }
+
+    private long allocated() {
+        return threads != null ? Math.max(0, threads.getThreadAllocatedBytes(target.getId())) : 0;
+    }
+}
@@ -0,0 +1,178 @@
+package com.craftinginterpreters.lox;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/*
+Lazy Lox string built by `+` and `*`. A Lox string value is either a flat String or a Rope, results
+shorter than FLAT_LENGTH are always flat. Ropes are compared and written out chunk by chunk, and only
+turned into a String when something needs the whole text at once.
+ */
+abstract class Rope {
+    static final int FLAT_LENGTH = 256;
+    // Short repeated strings are handed out in chunks of about this many characters.
+    private static final int CHUNK_LENGTH = 8192;
+
+    final long length;
+    private String flat;
+
+    private Rope(long length) {
+        this.length = length;
+    }
+
+    static long length(Object string) {
+        if (string instanceof Rope) return ((Rope)string).length;
+        return ((String)string).length();
+    }
+
+    static Object concat(Object left, Object right) {
+        long length = length(left) + length(right);
+        // Any rope is at least FLAT_LENGTH long, so both sides are flat here.
+        if (length < FLAT_LENGTH) return (String)left + right;
+        if (length(left) == 0) return right;
+        if (length(right) == 0) return left;
+        return new Concat(left, right, length);
+    }
+
+    static Object repeat(Object base, int count) {
+        // Same failure as String.repeat.
+        if (count < 0) throw new IllegalArgumentException("count is negative: " + count);
+
+        long baseLength = length(base);
+        if (count == 0 || baseLength == 0) return "";
+        if (count == 1) return base;
+
+        long length;
+        try {
+            length = Math.multiplyExact(baseLength, count);
+        } catch (ArithmeticException error) {
+            throw new OutOfMemoryError("Repeating " + baseLength + " characters " + count + " times is too long");
+        }
+        if (length < FLAT_LENGTH) return ((String)base).repeat(count);
+        return new Repetition(base, count, length);
+    }
+
+    static boolean contentEquals(Object left, Object right) {
+        if (left == right) return true;
+        if (left instanceof String && right instanceof String) return left.equals(right);
+        if (length(left) != length(right)) return false;
+
+        Chunks leftChunks = new Chunks(left), rightChunks = new Chunks(right);
+        String leftChunk = leftChunks.next(), rightChunk = rightChunks.next();
+        int leftOffset = 0, rightOffset = 0;
+        // Equal lengths, so both run out of chunks together.
+        while (leftChunk != null) {
+            int common = Math.min(leftChunk.length() - leftOffset, rightChunk.length() - rightOffset);
+            if (!leftChunk.regionMatches(leftOffset, rightChunk, rightOffset, common)) return false;
+
+            leftOffset += common;
+            rightOffset += common;
+            if (leftOffset == leftChunk.length()) {
+                leftChunk = leftChunks.next();
+                leftOffset = 0;
+            }
+            if (rightOffset == rightChunk.length()) {
+                rightChunk = rightChunks.next();
+                rightOffset = 0;
+            }
+        }
+        return true;
+    }
+
+    void writeTo(Appendable out) {
+        try {
+            Chunks chunks = new Chunks(this);
+            for (String chunk = chunks.next(); chunk != null; chunk = chunks.next()) out.append(chunk);
+        } catch (IOException error) {
+            throw new UncheckedIOException(error);
+        }
+    }
+
+    @Override
+    public String toString() {
+        if (flat == null) {
+            if (length > Integer.MAX_VALUE - 8) {
+                throw new OutOfMemoryError("String of " + length + " characters exceeds the maximum size");
+            }
+            StringBuilder builder = new StringBuilder((int)length);
+            writeTo(builder);
+            flat = builder.toString();
+        }
+        return flat;
+    }
+
+    private static class Concat extends Rope {
+        Concat(Object left, Object right, long length) {
+            super(length);
+            this.left = left;
+            this.right = right;
+        }
+
+        final Object left;
+        final Object right;
+    }
+
+    private static class Repetition extends Rope {
+        Repetition(Object base, int count, long length) {
+            super(length);
+            this.base = base;
+            this.count = count;
+        }
+
+        final Object base;
+        final int count;
+    }
+
+    /*
+    Walks the leaves of a rope in order with an explicit stack, deep concatenation chains included
+    */
+    private static class Chunks {
+        private final Deque<Object> pending = new ArrayDeque<>();
+
+        Chunks(Object string) {
+            pending.push(string);
+        }
+
+        String next() {
+            while (!pending.isEmpty()) {
+                Object top = pending.pop();
+                if (top instanceof String) {
+                    if (!((String)top).isEmpty()) return (String)top;
+                } else if (top instanceof Concat) {
+                    Concat concat = (Concat)top;
+                    pending.push(concat.right);
+                    pending.push(concat.left);
+                } else if (top instanceof Repetition) {
+                    Repetition repetition = (Repetition)top;
+                    if (repetition.base instanceof String) {
+                        String base = (String)repetition.base;
+                        int perChunk = Math.max(1, CHUNK_LENGTH / base.length());
+                        pending.push(base.repeat(repetition.count % perChunk));
+                        pending.push(new Repeating(base.repeat(Math.min(perChunk, repetition.count)), repetition.count / perChunk));
+                    } else {
+                        pending.push(new Repeating(repetition.base, repetition.count));
+                    }
+                } else {
+                    Repeating repeating = (Repeating)top;
+                    if (repeating.remaining-- > 0) {
+                        pending.push(repeating);
+                        pending.push(repeating.unit);
+                    }
+                }
+            }
+            return null;
+        }
+    }
+
+    private static class Repeating {
+        Repeating(Object unit, int remaining) {
+            this.unit = unit;
+            this.remaining = remaining;
+        }
+
+        final Object unit;
+        int remaining;
+    }
+}
@@ -4,7 +4,8 @@ class RuntimeError extends RuntimeException {
     final Token token;
 
     RuntimeError(Token token, String message) {
-        super(message);
+        // Stackless, errors are reported by their token and message alone.
+        super(message, null, false, false);
         this.token = token;
     }
 }
\ No newline at end of file
@@ -0,0 +1,249 @@
+package com.craftinginterpreters.lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.zip.CRC32;
+
+/*
+Parsed trees of script files kept next to them in a .loxc file, so an unchanged script is loaded
+instead of tokenized and parsed again. The file layout is
+
+    "LOXC" | version | SHA-256 of the source, its charset and parser mode | payload length | CRC32 of the payload | payload
+
+where the payload is the tree in post-order, operators with their type and line, variables with their
+name and line. A file that does not match the source, or fails any of the checks, is treated as missing
+and rebuilt.
+ */
+class ScriptCache {
+    private static final int MAGIC = 0x4c4f5843; // "LOXC"
+    private static final int VERSION = 3;
+    private static final int HEADER_SIZE = 4 + 4 + 32 + 4 + 4;
+    private static final TokenType[] TYPES = TokenType.values();
+    // Marks the point in the encoding walk where the node below it has its operands written.
+    private static final Object EXIT = new Object();
+
+    // Post-order node tags.
+    private static final byte NIL = 0, TRUE = 1, FALSE = 2, NUMBER = 3, STRING = 4, GROUPING = 5, UNARY = 6, BINARY = 7,
+            VARIABLE = 8;
+
+    private final Path path;
+    private final byte[] hash;
+
+    ScriptCache(Path script, byte[] source, Charset charset, boolean recovering) {
+        String name = script.getFileName().toString();
+        if (name.endsWith(".lox")) name = name.substring(0, name.length() - ".lox".length());
+        this.path = script.resolveSibling(name + ".loxc");
+        this.hash = hash(source, charset, recovering);
+    }
+
+    // Returns the cached tree, or null when there is no usable cache file.
+    Node load() {
+        if (!Files.isRegularFile(path)) return null;
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) return null;
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) return null;
+            byte[] sourceHash = new byte[hash.length];
+            buffer.get(sourceHash);
+            if (!Arrays.equals(sourceHash, hash)) return null;
+
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (length != buffer.remaining()) return null;
+            CRC32 crc = new CRC32();
+            crc.update(buffer.slice());
+            if ((int)crc.getValue() != checksum) return null;
+
+            return decode(buffer);
+        } catch (IOException | BufferUnderflowException | IllegalStateException | NegativeArraySizeException error) {
+            return null;
+        }
+    }
+
+    void store(Node root) {
+        try {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream();
+            encode(root, new DataOutputStream(payload));
+            CRC32 crc = new CRC32();
+            crc.update(payload.toByteArray());
+
+            ByteArrayOutputStream file = new ByteArrayOutputStream(HEADER_SIZE + payload.size());
+            DataOutputStream out = new DataOutputStream(file);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.write(hash);
+            out.writeInt(payload.size());
+            out.writeInt((int)crc.getValue());
+            payload.writeTo(out);
+
+            // Written aside and moved into place, a reader never sees a half written file.
+            Path temporary = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+            Files.write(temporary, file.toByteArray());
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException error) {
+            // The cache is only an optimization, the script ran either way.
+        }
+    }
+
+    /*
+    Encoding
+    */
+    // With an explicit stack, so trees too deep to recurse over can be stored too.
+    private static void encode(Node root, DataOutputStream out) throws IOException {
+        Deque<Object> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            Object item = pending.pop();
+            if (item == EXIT) {
+                Node node = (Node)pending.pop();
+                if (node instanceof Node.Binary) {
+                    writeOperator(BINARY, ((Node.Binary)node).operator, out);
+                } else if (node instanceof Node.Grouping) {
+                    out.writeByte(GROUPING);
+                } else {
+                    writeOperator(UNARY, ((Node.Unary)node).operator, out);
+                }
+                continue;
+            }
+
+            Node node = (Node)item;
+            if (node instanceof Node.Binary) {
+                pending.push(node);
+                pending.push(EXIT);
+                pending.push(((Node.Binary)node).right);
+                pending.push(((Node.Binary)node).left);
+            } else if (node instanceof Node.Grouping) {
+                pending.push(node);
+                pending.push(EXIT);
+                pending.push(((Node.Grouping)node).expression);
+            } else if (node instanceof Node.Unary) {
+                pending.push(node);
+                pending.push(EXIT);
+                pending.push(((Node.Unary)node).right);
+            } else if (node instanceof Node.Variable) {
+                Token name = ((Node.Variable)node).name;
+                byte[] bytes = name.lexeme.getBytes(StandardCharsets.UTF_8);
+                out.writeByte(VARIABLE);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+                out.writeInt(name.line);
+            } else {
+                writeLiteral(((Node.Literal)node).value, out);
+            }
+        }
+    }
+
+    private static void writeLiteral(Object value, DataOutputStream out) throws IOException {
+        if (value == null) {
+            out.writeByte(NIL);
+        } else if (value instanceof Boolean) {
+            out.writeByte((boolean)value ? TRUE : FALSE);
+        } else if (value instanceof Double) {
+            out.writeByte(NUMBER);
+            out.writeDouble((double)value);
+        } else {
+            byte[] bytes = value.toString().getBytes(StandardCharsets.UTF_8);
+            out.writeByte(STRING);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static void writeOperator(byte tag, Token operator, DataOutputStream out) throws IOException {
+        out.writeByte(tag);
+        out.writeByte(operator.type.ordinal());
+        out.writeInt(operator.line);
+    }
+
+    /*
+    Decoding, post-order so every node finds its operands on the stack
+    */
+    private static Node decode(ByteBuffer buffer) {
+        Deque<Node> stack = new ArrayDeque<>();
+        while (buffer.hasRemaining()) {
+            byte tag = buffer.get();
+            switch (tag) {
+                case NIL: stack.push(new Node.Literal(null)); break;
+                case TRUE: stack.push(new Node.Literal(true)); break;
+                case FALSE: stack.push(new Node.Literal(false)); break;
+                case NUMBER: stack.push(new Node.Literal(buffer.getDouble())); break;
+                case STRING: {
+                    byte[] bytes = new byte[buffer.getInt()];
+                    buffer.get(bytes);
+                    stack.push(new Node.Literal(new String(bytes, StandardCharsets.UTF_8)));
+                    break;
+                }
+                case VARIABLE: {
+                    byte[] bytes = new byte[buffer.getInt()];
+                    buffer.get(bytes);
+                    String name = new String(bytes, StandardCharsets.UTF_8);
+                    stack.push(new Node.Variable(new Token(TokenType.IDENTIFIER, name, null, buffer.getInt())));
+                    break;
+                }
+                case GROUPING:
+                    stack.push(new Node.Grouping(pop(stack)));
+                    break;
+                case UNARY: {
+                    Token operator = readOperator(buffer);
+                    stack.push(new Node.Unary(operator, pop(stack)));
+                    break;
+                }
+                case BINARY: {
+                    Token operator = readOperator(buffer);
+                    Node right = pop(stack);
+                    Node left = pop(stack);
+                    stack.push(new Node.Binary(left, operator, right));
+                    break;
+                }
+                default:
+                    throw new IllegalStateException("Unknown node tag " + tag);
+            }
+        }
+        if (stack.size() != 1) throw new IllegalStateException("Cache holds " + stack.size() + " trees");
+        return stack.pop();
+    }
+
+    private static Token readOperator(ByteBuffer buffer) {
+        int type = buffer.get();
+        if (type < 0 || type >= TYPES.length || TYPES[type].fixedLexeme() == null) {
+            throw new IllegalStateException("Unknown operator type " + type);
+        }
+        return new Token(TYPES[type], TYPES[type].fixedLexeme(), null, buffer.getInt());
+    }
+
+    private static Node pop(Deque<Node> stack) {
+        if (stack.isEmpty()) throw new IllegalStateException("Operator without operands");
+        return stack.pop();
+    }
+
+    private static byte[] hash(byte[] source, Charset charset, boolean recovering) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(source);
+            // Literals were decoded with this charset.
+            digest.update(charset.name().getBytes(StandardCharsets.UTF_8));
+            // A tree is only reused by the parser mode that built it.
+            digest.update((byte)(recovering ? 1 : 0));
+            return digest.digest();
+        } catch (NoSuchAlgorithmException error) {
+            throw new IllegalStateException("SHA-256 is always available", error);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.craftinginterpreters.lox;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/*
+Characters of a script as seen by the Tokenizer, addressed by absolute offset from the start of the script.
+ */
+abstract class Source implements Closeable {
+    abstract boolean isAtEnd(int index);
+
+    abstract char charAt(int index);
+
+    abstract String substring(int start, int end);
+
+    // Offset just past the character starting at index, which may take more than one char to spell.
+    int characterEnd(int index) {
+        if (Character.isHighSurrogate(charAt(index)) && !isAtEnd(index + 1)
+                && Character.isLowSurrogate(charAt(index + 1))) {
+            return index + 2;
+        }
+        return index + 1;
+    }
+
+    // Tells the source that nothing before index will be read again.
+    void release(int index) {}
+
+    @Override
+    public void close() throws IOException {}
+
+    static Source of(CharSequence text) {
+        return new Text(text);
+    }
+
+    static Source of(Reader reader) {
+        return new Window(reader, Window.DEFAULT_SIZE);
+    }
+
+    // Maps the file into memory and tokenizes its UTF-8 bytes in place, files past 2GB are streamed instead.
+    static Source map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() <= Integer.MAX_VALUE) {
+                return new Mapped(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            }
+        }
+        // Malformed input is replaced, as it is when decoding mapped bytes.
+        return of(new InputStreamReader(Files.newInputStream(path), StandardCharsets.UTF_8));
+    }
+
+    private static class Text extends Source {
+        Text(CharSequence text) {
+            this.text = text;
+        }
+
+        @Override
+        boolean isAtEnd(int index) {
+            return index >= text.length();
+        }
+
+        @Override
+        char charAt(int index) {
+            return text.charAt(index);
+        }
+
+        @Override
+        String substring(int start, int end) {
+            return text.subSequence(start, end).toString();
+        }
+
+        private final CharSequence text;
+    }
+
+    /*
+    Fixed size sliding window over a Reader. Released characters are dropped when the window is refilled,
+    it only grows past its size for a single token that is longer than the whole window.
+     */
+    private static class Window extends Source {
+        static final int DEFAULT_SIZE = 8192;
+
+        Window(Reader reader, int size) {
+            this.reader = reader;
+            this.buffer = new char[size];
+        }
+
+        @Override
+        boolean isAtEnd(int index) {
+            return !fill(index);
+        }
+
+        @Override
+        char charAt(int index) {
+            fill(index);
+            return buffer[index - offset];
+        }
+
+        @Override
+        String substring(int start, int end) {
+            return new String(buffer, start - offset, end - start);
+        }
+
+        @Override
+        void release(int index) {
+            released = index;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+
+        // Makes sure the character at index is in the window, returns false once the reader is exhausted.
+        private boolean fill(int index) {
+            while (index >= offset + length) {
+                if (exhausted) return false;
+
+                int keep = offset + length - released;
+                if (keep < buffer.length) {
+                    System.arraycopy(buffer, released - offset, buffer, 0, keep);
+                    offset = released;
+                } else {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                length = keep;
+
+                try {
+                    int read = reader.read(buffer, length, buffer.length - length);
+                    if (read < 0) {
+                        exhausted = true;
+                    } else {
+                        length += read;
+                    }
+                } catch (IOException error) {
+                    throw new UncheckedIOException(error);
+                }
+            }
+            return true;
+        }
+
+        private final Reader reader;
+        private char[] buffer;
+        // Absolute offset of buffer[0], and the number of characters in the buffer.
+        private int offset = 0, length = 0;
+        private int released = 0;
+        private boolean exhausted = false;
+    }
+
+    /*
+    UTF-8 bytes of a memory mapped file, one byte per character. Every token the Tokenizer recognises is ASCII,
+    multi-byte characters can only be part of a string literal, so bytes are only decoded for identifiers, numbers
+    and string literals. A multi-byte character anywhere else is skipped whole by characterEnd.
+     */
+    private static class Mapped extends Source {
+        Mapped(MappedByteBuffer bytes) {
+            this.bytes = bytes;
+            this.length = bytes.limit();
+        }
+
+        @Override
+        boolean isAtEnd(int index) {
+            return index >= length;
+        }
+
+        @Override
+        char charAt(int index) {
+            return (char)(bytes.get(index) & 0xff);
+        }
+
+        // Skips the continuation bytes of a multi-byte character.
+        @Override
+        int characterEnd(int index) {
+            int end = index + 1;
+            while (end < length && end - index < 4 && (bytes.get(end) & 0xc0) == 0x80) end++;
+            return end;
+        }
+
+        @Override
+        String substring(int start, int end) {
+            byte[] range = new byte[end - start];
+            bytes.get(start, range);
+            return new String(range, StandardCharsets.UTF_8);
+        }
+
+        private final MappedByteBuffer bytes;
+        private final int length;
+    }
+}
@@ -0,0 +1,372 @@
+package com.craftinginterpreters.lox;
+
+/*
+Executable counterpart of a Node tree that rewrites itself based on the operand types it observes.
+Binary and Unary nodes start uninitialized, replace themselves with a variant for the types seen on
+their first execution, and fall back to the generic Interpreter semantics for good once a guard fails.
+ */
+abstract class SpecializedNode {
+    SpecializedNode parent;
+
+    abstract Object execute();
+
+    void replaceChild(SpecializedNode oldChild, SpecializedNode newChild) {
+        throw new IllegalStateException("Node has no children");
+    }
+
+    final <T extends SpecializedNode> T replace(T node) {
+        node.parent = parent;
+        parent.replaceChild(this, node);
+        return node;
+    }
+
+    static class Root extends SpecializedNode {
+        Root(SpecializedNode child) {
+            this.child = adopt(child);
+        }
+
+        @Override
+        Object execute() {
+            return child.execute();
+        }
+
+        @Override
+        void replaceChild(SpecializedNode oldChild, SpecializedNode newChild) {
+            if (child == oldChild) child = newChild;
+        }
+
+        private SpecializedNode child;
+    }
+
+    static class Constant extends SpecializedNode {
+        Constant(Object value) {
+            this.value = value;
+        }
+
+        @Override
+        Object execute() {
+            return value;
+        }
+
+        final Object value;
+    }
+
+    // Variables are only ever bound for columnar evaluation, here every one is undefined.
+    static class Variable extends SpecializedNode {
+        Variable(Token name) {
+            this.name = name;
+        }
+
+        @Override
+        Object execute() {
+            throw Interpreter.undefinedVariable(name);
+        }
+
+        final Token name;
+    }
+
+    /*
+    Binary operators
+    */
+    abstract static class Binary extends SpecializedNode {
+        Binary(Token operator, SpecializedNode left, SpecializedNode right) {
+            this.operator = operator;
+            this.left = adopt(left);
+            this.right = adopt(right);
+        }
+
+        @Override
+        final Object execute() {
+            return execute(left.execute(), right.execute());
+        }
+
+        abstract Object execute(Object left, Object right);
+
+        final Object generalize(Object leftValue, Object rightValue) {
+            return replace(new GenericBinary(operator, left, right)).execute(leftValue, rightValue);
+        }
+
+        @Override
+        void replaceChild(SpecializedNode oldChild, SpecializedNode newChild) {
+            if (left == oldChild) left = newChild;
+            if (right == oldChild) right = newChild;
+        }
+
+        final Token operator;
+        SpecializedNode left;
+        SpecializedNode right;
+    }
+
+    static class UninitializedBinary extends Binary {
+        UninitializedBinary(Token operator, SpecializedNode left, SpecializedNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        Object execute(Object leftValue, Object rightValue) {
+            return replace(specialize(leftValue, rightValue)).execute(leftValue, rightValue);
+        }
+
+        private Binary specialize(Object leftValue, Object rightValue) {
+            boolean numbers = leftValue instanceof Double && rightValue instanceof Double;
+            switch (operator.type) {
+                case PLUS:
+                    if (numbers) return new NumberAdd(operator, left, right);
+                    if (Interpreter.isString(leftValue) && Interpreter.isString(rightValue)) {
+                        return new StringConcat(operator, left, right);
+                    }
+                    break;
+                case STAR:
+                    if (numbers) return new NumberMultiply(operator, left, right);
+                    if (Interpreter.isString(leftValue) && rightValue instanceof Double) {
+                        return new StringRepeat(operator, left, right, true);
+                    }
+                    if (leftValue instanceof Double && Interpreter.isString(rightValue)) {
+                        return new StringRepeat(operator, left, right, false);
+                    }
+                    break;
+                case MINUS:
+                    if (numbers) return new NumberSubtract(operator, left, right);
+                    break;
+                case SLASH:
+                    if (numbers) return new NumberDivide(operator, left, right);
+                    break;
+                case GREATER:
+                case GREATER_EQUAL:
+                case LESS:
+                case LESS_EQUAL:
+                    if (numbers) return new NumberCompare(operator, left, right);
+                    break;
+                case EQUAL_EQUAL:
+                case BANG_EQUAL:
+                    if (numbers) return new NumberEquals(operator, left, right);
+                    break;
+            }
+            return new GenericBinary(operator, left, right);
+        }
+    }
+
+    static class GenericBinary extends Binary {
+        GenericBinary(Token operator, SpecializedNode left, SpecializedNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        Object execute(Object leftValue, Object rightValue) {
+            return Interpreter.binary(operator, leftValue, rightValue);
+        }
+    }
+
+    static class NumberAdd extends Binary {
+        NumberAdd(Token operator, SpecializedNode left, SpecializedNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        Object execute(Object leftValue, Object rightValue) {
+            if (leftValue instanceof Double && rightValue instanceof Double) {
+                return (double)leftValue + (double)rightValue;
+            }
+            return generalize(leftValue, rightValue);
+        }
+    }
+
+    static class NumberSubtract extends Binary {
+        NumberSubtract(Token operator, SpecializedNode left, SpecializedNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        Object execute(Object leftValue, Object rightValue) {
+            if (leftValue instanceof Double && rightValue instanceof Double) {
+                return (double)leftValue - (double)rightValue;
+            }
+            return generalize(leftValue, rightValue);
+        }
+    }
+
+    static class NumberMultiply extends Binary {
+        NumberMultiply(Token operator, SpecializedNode left, SpecializedNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        Object execute(Object leftValue, Object rightValue) {
+            if (leftValue instanceof Double && rightValue instanceof Double) {
+                return (double)leftValue * (double)rightValue;
+            }
+            return generalize(leftValue, rightValue);
+        }
+    }
+
+    static class NumberDivide extends Binary {
+        NumberDivide(Token operator, SpecializedNode left, SpecializedNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        Object execute(Object leftValue, Object rightValue) {
+            if (leftValue instanceof Double && rightValue instanceof Double) {
+                return (double)leftValue / (double)rightValue;
+            }
+            return generalize(leftValue, rightValue);
+        }
+    }
+
+    static class NumberCompare extends Binary {
+        NumberCompare(Token operator, SpecializedNode left, SpecializedNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        Object execute(Object leftValue, Object rightValue) {
+            if (leftValue instanceof Double && rightValue instanceof Double) {
+                double a = (double)leftValue, b = (double)rightValue;
+                return switch (operator.type) {
+                    case GREATER -> a > b;
+                    case GREATER_EQUAL -> a >= b;
+                    case LESS -> a < b;
+                    default -> a <= b;
+                };
+            }
+            return generalize(leftValue, rightValue);
+        }
+    }
+
+    static class NumberEquals extends Binary {
+        NumberEquals(Token operator, SpecializedNode left, SpecializedNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        Object execute(Object leftValue, Object rightValue) {
+            if (leftValue instanceof Double && rightValue instanceof Double) {
+                // Same as Double.equals, which the interpreter uses.
+                boolean equal = Double.doubleToLongBits((double)leftValue) == Double.doubleToLongBits((double)rightValue);
+                return operator.type == TokenType.EQUAL_EQUAL ? equal : !equal;
+            }
+            return generalize(leftValue, rightValue);
+        }
+    }
+
+    static class StringConcat extends Binary {
+        StringConcat(Token operator, SpecializedNode left, SpecializedNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        Object execute(Object leftValue, Object rightValue) {
+            if (Interpreter.isString(leftValue) && Interpreter.isString(rightValue)) {
+                return Rope.concat(leftValue, rightValue);
+            }
+            return generalize(leftValue, rightValue);
+        }
+    }
+
+    static class StringRepeat extends Binary {
+        StringRepeat(Token operator, SpecializedNode left, SpecializedNode right, boolean stringOnLeft) {
+            super(operator, left, right);
+            this.stringOnLeft = stringOnLeft;
+        }
+
+        @Override
+        Object execute(Object leftValue, Object rightValue) {
+            Object base = stringOnLeft ? leftValue : rightValue;
+            Object count = stringOnLeft ? rightValue : leftValue;
+            if (Interpreter.isString(base) && count instanceof Double) {
+                return Interpreter.repeat(operator, base, (int)(double)count);
+            }
+            return generalize(leftValue, rightValue);
+        }
+
+        final boolean stringOnLeft;
+    }
+
+    /*
+    Unary operators
+    */
+    abstract static class Unary extends SpecializedNode {
+        Unary(Token operator, SpecializedNode right) {
+            this.operator = operator;
+            this.right = adopt(right);
+        }
+
+        @Override
+        final Object execute() {
+            return execute(right.execute());
+        }
+
+        abstract Object execute(Object rightValue);
+
+        final Object generalize(Object rightValue) {
+            return replace(new GenericUnary(operator, right)).execute(rightValue);
+        }
+
+        @Override
+        void replaceChild(SpecializedNode oldChild, SpecializedNode newChild) {
+            if (right == oldChild) right = newChild;
+        }
+
+        final Token operator;
+        SpecializedNode right;
+    }
+
+    static class UninitializedUnary extends Unary {
+        UninitializedUnary(Token operator, SpecializedNode right) {
+            super(operator, right);
+        }
+
+        @Override
+        Object execute(Object rightValue) {
+            Unary specialized;
+            if (operator.type == TokenType.MINUS && rightValue instanceof Double) {
+                specialized = new NumberNegate(operator, right);
+            } else if (operator.type == TokenType.BANG && rightValue instanceof Boolean) {
+                specialized = new BooleanNot(operator, right);
+            } else {
+                specialized = new GenericUnary(operator, right);
+            }
+            return replace(specialized).execute(rightValue);
+        }
+    }
+
+    static class GenericUnary extends Unary {
+        GenericUnary(Token operator, SpecializedNode right) {
+            super(operator, right);
+        }
+
+        @Override
+        Object execute(Object rightValue) {
+            return Interpreter.unary(operator, rightValue);
+        }
+    }
+
+    static class NumberNegate extends Unary {
+        NumberNegate(Token operator, SpecializedNode right) {
+            super(operator, right);
+        }
+
+        @Override
+        Object execute(Object rightValue) {
+            if (rightValue instanceof Double) return -(double)rightValue;
+            return generalize(rightValue);
+        }
+    }
+
+    static class BooleanNot extends Unary {
+        BooleanNot(Token operator, SpecializedNode right) {
+            super(operator, right);
+        }
+
+        @Override
+        Object execute(Object rightValue) {
+            if (rightValue instanceof Boolean) return !(boolean)rightValue;
+            return generalize(rightValue);
+        }
+    }
+
+    final SpecializedNode adopt(SpecializedNode child) {
+        child.parent = this;
+        return child;
+    }
+}
@@ -0,0 +1,41 @@
+package com.craftinginterpreters.lox;
+
+public class Specializer implements Node.Visitor<SpecializedNode> {
+    SpecializedNode.Root specialize(Node root) {
+        return new SpecializedNode.Root(root.accept(this));
+    }
+
+    void interpret(SpecializedNode.Root root) {
+        try {
+            Object result = root.execute();
+            Interpreter.printResult(Lox.out, result);
+        } catch (RuntimeError error) {
+            Lox.runtimeError(error);
+        }
+    }
+
+    @Override
+    public SpecializedNode visit(Node.Binary node) {
+        return new SpecializedNode.UninitializedBinary(node.operator, node.left.accept(this), node.right.accept(this));
+    }
+
+    @Override
+    public SpecializedNode visit(Node.Grouping node) {
+        return node.expression.accept(this);
+    }
+
+    @Override
+    public SpecializedNode visit(Node.Literal node) {
+        return new SpecializedNode.Constant(node.value);
+    }
+
+    @Override
+    public SpecializedNode visit(Node.Unary node) {
+        return new SpecializedNode.UninitializedUnary(node.operator, node.right.accept(this));
+    }
+
+    @Override
+    public SpecializedNode visit(Node.Variable node) {
+        return new SpecializedNode.Variable(node.name);
+    }
+}
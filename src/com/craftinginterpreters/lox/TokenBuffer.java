@@ -0,0 +1,86 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+
+/*
+Tokens stored as parallel primitive arrays. Lexemes are not kept, they are read back out of the
+source when a Token has to be materialized, e.g. for an error message.
+ */
+class TokenBuffer {
+    private static final TokenType[] TYPES = TokenType.values();
+
+    private final Source source;
+    private byte[] types = new byte[1024];
+    private int[] starts = new int[1024];
+    private int[] lengths = new int[1024];
+    private int[] lines = new int[1024];
+    // Index into literals, or -1 for tokens without a literal.
+    private int[] literalIndices = new int[1024];
+    private Object[] literals = new Object[64];
+    private int size = 0, literalCount = 0;
+
+    TokenBuffer(Source source) {
+        this.source = source;
+    }
+
+    void add(TokenType type, int start, int length, int line, Object literal) {
+        if (size == types.length) grow();
+
+        types[size] = (byte)type.ordinal();
+        starts[size] = start;
+        lengths[size] = length;
+        lines[size] = line;
+        if (literal == null) {
+            literalIndices[size] = -1;
+        } else {
+            if (literalCount == literals.length) literals = Arrays.copyOf(literals, literalCount * 2);
+            literals[literalCount] = literal;
+            literalIndices[size] = literalCount++;
+        }
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    TokenType type(int index) {
+        return TYPES[types[index]];
+    }
+
+    int start(int index) {
+        return starts[index];
+    }
+
+    int length(int index) {
+        return lengths[index];
+    }
+
+    int line(int index) {
+        return lines[index];
+    }
+
+    Object literal(int index) {
+        int literalIndex = literalIndices[index];
+        return literalIndex < 0 ? null : literals[literalIndex];
+    }
+
+    String lexeme(int index) {
+        String lexeme = type(index).fixedLexeme();
+        if (lexeme != null) return lexeme;
+        return source.substring(starts[index], starts[index] + lengths[index]);
+    }
+
+    Token token(int index) {
+        return new Token(type(index), lexeme(index), literal(index), lines[index]);
+    }
+
+    private void grow() {
+        int capacity = types.length * 2;
+        types = Arrays.copyOf(types, capacity);
+        starts = Arrays.copyOf(starts, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+        lines = Arrays.copyOf(lines, capacity);
+        literalIndices = Arrays.copyOf(literalIndices, capacity);
+    }
+}
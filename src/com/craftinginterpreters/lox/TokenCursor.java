@@ -0,0 +1,111 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Iterator;
+
+/*
+The Parser's view of its tokens: the next token and the one before it. Token objects are only
+requested for tokens that end up in a Node or in an error message.
+ */
+abstract class TokenCursor {
+    abstract TokenType peekType();
+
+    abstract Token peek();
+
+    abstract TokenType previousType();
+
+    abstract Token previous();
+
+    abstract Object previousLiteral();
+
+    abstract void advance();
+
+    static TokenCursor of(Iterator<Token> tokens) {
+        return new Pulling(tokens);
+    }
+
+    static TokenCursor of(TokenBuffer tokens) {
+        return new Buffered(tokens);
+    }
+
+    // Pulls tokens on demand, only the previous and the next token are held on to.
+    private static class Pulling extends TokenCursor {
+        Pulling(Iterator<Token> tokens) {
+            this.tokens = tokens;
+            this.next = tokens.next();
+        }
+
+        @Override
+        TokenType peekType() {
+            return next.type;
+        }
+
+        @Override
+        Token peek() {
+            return next;
+        }
+
+        @Override
+        TokenType previousType() {
+            return previous.type;
+        }
+
+        @Override
+        Token previous() {
+            return previous;
+        }
+
+        @Override
+        Object previousLiteral() {
+            return previous.literal;
+        }
+
+        @Override
+        void advance() {
+            previous = next;
+            next = tokens.next();
+        }
+
+        private final Iterator<Token> tokens;
+        private Token previous = null;
+        private Token next;
+    }
+
+    private static class Buffered extends TokenCursor {
+        Buffered(TokenBuffer tokens) {
+            this.tokens = tokens;
+        }
+
+        @Override
+        TokenType peekType() {
+            return tokens.type(current);
+        }
+
+        @Override
+        Token peek() {
+            return tokens.token(current);
+        }
+
+        @Override
+        TokenType previousType() {
+            return tokens.type(current - 1);
+        }
+
+        @Override
+        Token previous() {
+            return tokens.token(current - 1);
+        }
+
+        @Override
+        Object previousLiteral() {
+            return tokens.literal(current - 1);
+        }
+
+        @Override
+        void advance() {
+            current++;
+        }
+
+        private final TokenBuffer tokens;
+        private int current = 0;
+    }
+}
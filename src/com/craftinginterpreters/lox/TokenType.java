@@ -1,5 +1,7 @@
 package com.craftinginterpreters.lox;
 
+import java.util.Locale;
+
 enum TokenType {
     // Single-character tokens.
     LEFT_PAREN, RIGHT_PAREN, LEFT_BRACE, RIGHT_BRACE,
@@ -19,5 +21,34 @@ enum TokenType {
     PRINT, RETURN, SUPER, THIS, TRUE, VAR, WHILE,
 
     // EOF.
-    EOF
+    EOF;
+
+    // The lexeme every token of this type has, or null when it depends on the source.
+    String fixedLexeme() {
+        return switch (this) {
+            case LEFT_PAREN -> "(";
+            case RIGHT_PAREN -> ")";
+            case LEFT_BRACE -> "{";
+            case RIGHT_BRACE -> "}";
+            case COMMA -> ",";
+            case DOT -> ".";
+            case MINUS -> "-";
+            case PLUS -> "+";
+            case SEMICOLON -> ";";
+            case SLASH -> "/";
+            case STAR -> "*";
+            case BANG -> "!";
+            case BANG_EQUAL -> "!=";
+            case EQUAL -> "=";
+            case EQUAL_EQUAL -> "==";
+            case GREATER -> ">";
+            case GREATER_EQUAL -> ">=";
+            case LESS -> "<";
+            case LESS_EQUAL -> "<=";
+            case IDENTIFIER, STRING, NUMBER -> null;
+            case EOF -> "";
+            // Locale.ROOT, in a Turkish locale IF would lowercase to a dotless "ıf".
+            default -> name().toLowerCase(Locale.ROOT);
+        };
+    }
 }
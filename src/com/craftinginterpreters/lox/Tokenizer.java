@@ -1,183 +1,230 @@
 package com.craftinginterpreters.lox;
 
+import java.io.Reader;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
+import java.util.NoSuchElementException;
 
 import static com.craftinginterpreters.lox.TokenType.*;
 
-public class Tokenizer {
-    private final String source;
-    private final List<Token> tokens = new ArrayList<>();
+public class Tokenizer implements Iterator<Token> {
+    private final Source source;
+    private final ErrorReporter reporter;
+    // The token scanToken() recognised, if any.
+    private TokenType tokenType = null;
+    private Object tokenLiteral = null;
+    private boolean reachedEnd = false;
     private int start = 0, current = 0, line = 1;
-    private static final Map<String, TokenType> keywords;
+
+    // Character classes, indexed by ASCII code. Anything outside of ASCII is OTHER.
+    private static final byte OTHER = 0, WHITESPACE = 1, NEWLINE = 2, DIGIT = 3, ALPHA = 4, QUOTE = 5, SLASH_CHAR = 6,
+            SINGLE = 7, EQUAL_SUFFIX = 8;
+    private static final byte[] charClasses = new byte[128];
+    // For SINGLE characters the token they form, for EQUAL_SUFFIX ones the token without and with a following '='.
+    private static final TokenType[] charTokens = new TokenType[128];
+    private static final TokenType[] charEqualTokens = new TokenType[128];
+    static {
+        for (char c = 'a'; c <= 'z'; c++) charClasses[c] = ALPHA;
+        for (char c = 'A'; c <= 'Z'; c++) charClasses[c] = ALPHA;
+        charClasses['_'] = ALPHA;
+        for (char c = '0'; c <= '9'; c++) charClasses[c] = DIGIT;
+        charClasses[' '] = WHITESPACE;
+        charClasses['\r'] = WHITESPACE;
+        charClasses['\t'] = WHITESPACE;
+        charClasses['\n'] = NEWLINE;
+        charClasses['"'] = QUOTE;
+        charClasses['/'] = SLASH_CHAR;
+
+        for (TokenType type : new TokenType[] {
+                LEFT_PAREN, RIGHT_PAREN, LEFT_BRACE, RIGHT_BRACE, COMMA, DOT, MINUS, PLUS, SEMICOLON, STAR }) {
+            char c = type.fixedLexeme().charAt(0);
+            charClasses[c] = SINGLE;
+            charTokens[c] = type;
+        }
+        for (TokenType[] types : new TokenType[][] {
+                { BANG, BANG_EQUAL }, { EQUAL, EQUAL_EQUAL }, { LESS, LESS_EQUAL }, { GREATER, GREATER_EQUAL } }) {
+            char c = types[0].fixedLexeme().charAt(0);
+            charClasses[c] = EQUAL_SUFFIX;
+            charTokens[c] = types[0];
+            charEqualTokens[c] = types[1];
+        }
+    }
+
+    /*
+    Collision free hash of the keywords on their length, first and last character. An identifier is
+    compared against the single keyword in its slot, straight from the source, so no lexeme is allocated.
+     */
+    private static final String[] keywordText = new String[32];
+    private static final TokenType[] keywordTypes = new TokenType[32];
     static {
-        keywords = new HashMap<>();
-        keywords.put("and",    AND);
-        keywords.put("class",  CLASS);
-        keywords.put("else",   ELSE);
-        keywords.put("false",  FALSE);
-        keywords.put("for",    FOR);
-        keywords.put("fun",    FUN);
-        keywords.put("if",     IF);
-        keywords.put("nil",    NIL);
-        keywords.put("or",     OR);
-        keywords.put("print",  PRINT);
-        keywords.put("return", RETURN);
-        keywords.put("super",  SUPER);
-        keywords.put("this",   THIS);
-        keywords.put("true",   TRUE);
-        keywords.put("var",    VAR);
-        keywords.put("while",  WHILE);
+        for (TokenType type : new TokenType[] {
+                AND, CLASS, ELSE, FALSE, FOR, FUN, IF, NIL, OR, PRINT, RETURN, SUPER, THIS, TRUE, VAR, WHILE }) {
+            String text = type.fixedLexeme();
+            int slot = keywordSlot(text.charAt(0), text.charAt(text.length() - 1), text.length());
+            if (keywordText[slot] != null) throw new IllegalStateException("Keyword hash collision for " + text);
+            keywordText[slot] = text;
+            keywordTypes[slot] = type;
+        }
+    }
+
+    private static int keywordSlot(char first, char last, int length) {
+        return (first * 7 + last + length) & 31;
     }
 
     Tokenizer(String source) {
+        this(Source.of(source));
+    }
+
+    // Streams tokens out of the reader, holding on to a bounded window of it rather than the whole script.
+    Tokenizer(Reader reader) {
+        this(Source.of(reader));
+    }
+
+    Tokenizer(Source source) {
+        this(source, 1, Lox.console);
+    }
+
+    Tokenizer(String source, int line, ErrorReporter reporter) {
+        this(Source.of(source), line, reporter);
+    }
+
+    Tokenizer(Source source, int line, ErrorReporter reporter) {
+        this(source, 0, line, reporter);
+    }
+
+    // Starts scanning at offset, which must not be inside of a token, comment or string, as line `line`.
+    Tokenizer(Source source, int offset, int line, ErrorReporter reporter) {
         this.source = source;
+        this.current = offset;
+        this.line = line;
+        this.reporter = reporter;
     }
 
     List<Token> tokenize() {
+        List<Token> tokens = new ArrayList<>();
+        while (hasNext()) {
+            tokens.add(next());
+        }
+        return tokens;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return !reachedEnd;
+    }
+
+    @Override
+    public Token next() {
+        if (reachedEnd) throw new NoSuchElementException();
+
+        if (scan()) return new Token(tokenType, lexeme(), tokenLiteral, line);
+
+        reachedEnd = true;
+        start = current;
+        return new Token(EOF, "", null, line);
+    }
+
+    // Only identifiers and numbers are read back out of the source, the other tokens already have their text.
+    private String lexeme() {
+        String lexeme = tokenType.fixedLexeme();
+        if (lexeme != null) return lexeme;
+        if (tokenType == STRING) return '"' + (String)tokenLiteral + '"';
+        return source.substring(start, current);
+    }
+
+    // Offset of the token next() returned last, for EOF the end of the source.
+    int tokenStart() {
+        return start;
+    }
+
+    // Tokenizes the rest of the source into parallel arrays, without a Token object or lexeme per token.
+    TokenBuffer tokenizeCompact() {
+        TokenBuffer buffer = new TokenBuffer(source);
+        while (scan()) {
+            buffer.add(tokenType, start, current - start, line, tokenLiteral);
+        }
+
+        buffer.add(EOF, current, 0, line, null);
+        reachedEnd = true;
+        return buffer;
+    }
+
+    // Scans up to the end of the next token, returns false once the source is exhausted.
+    private boolean scan() {
         while (!isAtEnd()) {
             start = current;
+            source.release(start);
+            tokenType = null;
             scanToken();
+            if (tokenType != null) return true;
         }
-
-        tokens.add(new Token(EOF, "", null, line));
-        return tokens;
+        return false;
     }
 
     private boolean isAtEnd() {
-        return current >= source.length();
+        return source.isAtEnd(current);
     }
 
     private void scanToken() {
         char c = advance();
-        switch (c) {
-            case '(': addToken(LEFT_PAREN); break;
-            case ')': addToken(RIGHT_PAREN); break;
-            case '{': addToken(LEFT_BRACE); break;
-            case '}': addToken(RIGHT_BRACE); break;
-            case ',': addToken(COMMA); break;
-            case '.': addToken(DOT); break;
-            case '-': addToken(MINUS); break;
-            case '+': addToken(PLUS); break;
-            case ';': addToken(SEMICOLON); break;
-            case '*': addToken(STAR); break;
-            case '!':
-                addToken(match('=') ? BANG_EQUAL : BANG);
-                break;
-            case '=':
-                addToken(match('=') ? EQUAL_EQUAL : EQUAL);
+        switch (charClass(c)) {
+            case SINGLE: addToken(charTokens[c]); break;
+            case EQUAL_SUFFIX:
+                addToken(match('=') ? charEqualTokens[c] : charTokens[c]);
                 break;
-            case '<':
-                addToken(match('=') ? LESS_EQUAL : LESS);
-                break;
-            case '>':
-                addToken(match('=') ? GREATER_EQUAL : GREATER);
-                break;
-            case '/':
+            case SLASH_CHAR:
                 if (match('/')) {
                     while (peek() != '\n' && !isAtEnd()) advance();
                 } else {
                     addToken(SLASH);
                 }
                 break;
-            case ' ':
-            case '\r':
-            case '\t':
+            case WHITESPACE:
                 break;
-            case '\n':
+            case NEWLINE:
                 line++;
                 break;
-            case '"': string(); break;
-            case '0':
-            case '1':
-            case '2':
-            case '3':
-            case '4':
-            case '5':
-            case '6':
-            case '7':
-            case '8':
-            case '9':
-                number();
-                break;
-            case 'a':
-            case 'b':
-            case 'c':
-            case 'd':
-            case 'e':
-            case 'f':
-            case 'g':
-            case 'h':
-            case 'i':
-            case 'j':
-            case 'k':
-            case 'l':
-            case 'm':
-            case 'n':
-            case 'o':
-            case 'p':
-            case 'q':
-            case 'r':
-            case 's':
-            case 't':
-            case 'u':
-            case 'v':
-            case 'w':
-            case 'x':
-            case 'y':
-            case 'z':
-            case 'A':
-            case 'B':
-            case 'C':
-            case 'D':
-            case 'E':
-            case 'F':
-            case 'G':
-            case 'H':
-            case 'I':
-            case 'J':
-            case 'K':
-            case 'L':
-            case 'M':
-            case 'N':
-            case 'O':
-            case 'P':
-            case 'Q':
-            case 'R':
-            case 'S':
-            case 'T':
-            case 'U':
-            case 'V':
-            case 'W':
-            case 'X':
-            case 'Y':
-            case 'Z':
-            case '_':
-                identifier();
-                break;
+            case QUOTE: string(); break;
+            case DIGIT: number(); break;
+            case ALPHA: identifier(); break;
             default:
-                Lox.error(line, "Unexpected character.");
+                // One error for the whole character, however many units the source spells it with.
+                current = source.characterEnd(start);
+                reporter.error(line, "Unexpected character.");
                 break;
         }
     }
 
+    private static byte charClass(char c) {
+        return c < 128 ? charClasses[c] : OTHER;
+    }
+
     private boolean isIdentifierChar(char c) {
-        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || isDigit(c);
+        byte charClass = charClass(c);
+        return charClass == ALPHA || charClass == DIGIT;
     }
 
     private void identifier() {
         while (isIdentifierChar(peek())) advance();
 
-        String text = source.substring(start, current);
-        TokenType type = keywords.get(text);
-        if (type == null) type = IDENTIFIER;
-        addToken(type);
+        addToken(keyword());
+    }
+
+    private TokenType keyword() {
+        int length = current - start;
+        int slot = keywordSlot(source.charAt(start), source.charAt(current - 1), length);
+        String text = keywordText[slot];
+        if (text == null || text.length() != length) return IDENTIFIER;
+
+        for (int i = 0; i < length; i++) {
+            if (source.charAt(start + i) != text.charAt(i)) return IDENTIFIER;
+        }
+        return keywordTypes[slot];
     }
 
     private boolean isDigit(char c) {
-        return c >= '0' && c <= '9';
+        return charClass(c) == DIGIT;
     }
 
     private void number() {
@@ -189,7 +236,37 @@ public class Tokenizer {
             while (isDigit(peek())) advance();
         }
 
-        addToken(NUMBER, Double.parseDouble(source.substring(start, current)));
+        addToken(NUMBER, numberValue());
+    }
+
+    /*
+    Clinger's fast path: a literal whose digits fit in a double exactly, divided by an exact power of ten,
+    is correctly rounded by that single division. Anything longer goes through Double.parseDouble.
+     */
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    private static final double[] exactPowersOfTen = new double[23];
+    static {
+        exactPowersOfTen[0] = 1;
+        for (int i = 1; i < exactPowersOfTen.length; i++) exactPowersOfTen[i] = exactPowersOfTen[i - 1] * 10;
+    }
+
+    private double numberValue() {
+        long mantissa = 0;
+        int fractionDigits = -1;
+        for (int i = start; i < current; i++) {
+            char c = source.charAt(i);
+            if (c == '.') {
+                fractionDigits = 0;
+                continue;
+            }
+            mantissa = mantissa * 10 + (c - '0');
+            if (mantissa > MAX_EXACT_MANTISSA) return Double.parseDouble(source.substring(start, current));
+            if (fractionDigits >= 0) fractionDigits++;
+        }
+
+        if (fractionDigits <= 0) return mantissa;
+        if (fractionDigits >= exactPowersOfTen.length) return Double.parseDouble(source.substring(start, current));
+        return mantissa / exactPowersOfTen[fractionDigits];
     }
 
     private void string() {
@@ -199,7 +276,7 @@ public class Tokenizer {
         }
 
         if (isAtEnd()) {
-            Lox.error(line, "Unterminated string.");
+            reporter.error(line, "Unterminated string.");
             return;
         }
 
@@ -213,7 +290,7 @@ public class Tokenizer {
     }
 
     private char peek(int lookAhead) {
-        if ((current + lookAhead) >= source.length()) return '\0';
+        if (source.isAtEnd(current + lookAhead)) return '\0';
         return source.charAt(current + lookAhead);
     }
 
@@ -233,7 +310,7 @@ public class Tokenizer {
     }
 
     private void addToken(TokenType type, Object literal) {
-        String text = source.substring(start, current);
-        tokens.add(new Token(type, text, literal, line));
+        tokenType = type;
+        tokenLiteral = literal;
     }
 }
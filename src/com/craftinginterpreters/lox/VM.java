@@ -0,0 +1,165 @@
+package com.craftinginterpreters.lox;
+
+public class VM {
+    // Marks a stack slot whose value is the unboxed double in `numbers`.
+    private static final Object NUMBER = new Object();
+
+    private Object[] stack = new Object[256];
+    private double[] numbers = new double[256];
+    private int top = 0;
+    private long executedInstructions = 0;
+
+    void interpret(Chunk chunk) {
+        try {
+            Object result = run(chunk);
+            Interpreter.printResult(Lox.out, result);
+        } catch (RuntimeError error) {
+            Lox.runtimeError(error);
+        }
+    }
+
+    Object run(Chunk chunk) {
+        if (stack.length < chunk.maxStack) {
+            stack = new Object[chunk.maxStack];
+            numbers = new double[chunk.maxStack];
+        }
+        top = 0;
+
+        final byte[] code = chunk.code;
+        int ip = 0;
+        while (true) {
+            final Token operator = chunk.tokens[ip];
+            executedInstructions++;
+            switch (code[ip++]) {
+                case OpCode.NUMBER:
+                    pushNumber(chunk.numbers[readIndex(code, ip)]);
+                    ip += 3;
+                    break;
+                case OpCode.CONSTANT:
+                    push(chunk.constants[readIndex(code, ip)]);
+                    ip += 3;
+                    break;
+                case OpCode.NIL: push(null); break;
+                case OpCode.TRUE: push(true); break;
+                case OpCode.FALSE: push(false); break;
+                case OpCode.POP: top--; break;
+                case OpCode.VARIABLE: throw Interpreter.undefinedVariable(operator);
+                case OpCode.EQUAL: push(equal()); break;
+                case OpCode.NOT_EQUAL: push(!equal()); break;
+                case OpCode.GREATER: {
+                    double left = number(top - 2, operator), right = number(top - 1, operator);
+                    top -= 2;
+                    push(left > right);
+                    break;
+                }
+                case OpCode.GREATER_EQUAL: {
+                    double left = number(top - 2, operator), right = number(top - 1, operator);
+                    top -= 2;
+                    push(left >= right);
+                    break;
+                }
+                case OpCode.LESS: {
+                    double left = number(top - 2, operator), right = number(top - 1, operator);
+                    top -= 2;
+                    push(left < right);
+                    break;
+                }
+                case OpCode.LESS_EQUAL: {
+                    double left = number(top - 2, operator), right = number(top - 1, operator);
+                    top -= 2;
+                    push(left <= right);
+                    break;
+                }
+                case OpCode.ADD:
+                    if (stack[top - 2] == NUMBER && stack[top - 1] == NUMBER) {
+                        numbers[top - 2] += numbers[top - 1];
+                        top--;
+                    } else {
+                        Object right = pop(), left = pop();
+                        push(Interpreter.operatorPlus(operator, left, right));
+                    }
+                    break;
+                case OpCode.SUBTRACT: {
+                    double left = number(top - 2, operator), right = number(top - 1, operator);
+                    top -= 2;
+                    pushNumber(left - right);
+                    break;
+                }
+                case OpCode.MULTIPLY:
+                    if (stack[top - 2] == NUMBER && stack[top - 1] == NUMBER) {
+                        numbers[top - 2] *= numbers[top - 1];
+                        top--;
+                    } else {
+                        Object right = pop(), left = pop();
+                        push(Interpreter.operatorStar(operator, left, right));
+                    }
+                    break;
+                case OpCode.DIVIDE: {
+                    double left = number(top - 2, operator), right = number(top - 1, operator);
+                    top -= 2;
+                    pushNumber(left / right);
+                    break;
+                }
+                case OpCode.NOT:
+                    if (stack[top - 1] == NUMBER) {
+                        stack[top - 1] = numbers[top - 1] == 0;
+                    } else {
+                        push(!Interpreter.toBoolean(pop()));
+                    }
+                    break;
+                case OpCode.NEGATE: {
+                    double value = number(top - 1, operator);
+                    top--;
+                    pushNumber(-value);
+                    break;
+                }
+                case OpCode.RETURN:
+                    return pop();
+            }
+        }
+    }
+
+    // Instructions run so far, for Metrics.
+    long executedInstructions() {
+        return executedInstructions;
+    }
+
+    private static int readIndex(byte[] code, int ip) {
+        return ((code[ip] & 0xff) << 16) | ((code[ip + 1] & 0xff) << 8) | (code[ip + 2] & 0xff);
+    }
+
+    /*
+    Stack helpers
+    */
+    private void push(Object value) {
+        stack[top++] = value;
+    }
+
+    private void pushNumber(double value) {
+        stack[top] = NUMBER;
+        numbers[top++] = value;
+    }
+
+    private Object pop() {
+        top--;
+        Object value = stack[top];
+        stack[top] = null;
+        return value == NUMBER ? (Object)numbers[top] : value;
+    }
+
+    private double number(int slot, Token operator) {
+        if (stack[slot] == NUMBER) return numbers[slot];
+        return Interpreter.tryCastNumber(operator, stack[slot]);
+    }
+
+    private boolean equal() {
+        if (stack[top - 2] == NUMBER && stack[top - 1] == NUMBER) {
+            // Same as Double.equals, which the interpreter uses.
+            boolean equal = Double.doubleToLongBits(numbers[top - 2]) == Double.doubleToLongBits(numbers[top - 1]);
+            top -= 2;
+            return equal;
+        }
+        Object right = pop(), left = pop();
+        return Interpreter.operatorEquals(left, right);
+    }
+}